@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/* Animates all gauges of the dash from one callback per display frame (vsync, Choreographer
+ * on API 16+, handler ticks below). Every channel moves from its current value to its target
+ * in given time with ease out, so a new target taken in the middle of the move continues
+ * from where the needle is. Nothing is scheduled while no channel moves.
+ * UI thread only, observers are called on UI thread. */
+public final class AnimationEngine {
+
+    private final static int FRAME_PERIOD = 16;  // ms, used without Choreographer
+
+    public interface IAnimationObserver {
+        public void onStep(int value);
+        public void onFinish(int value);
+    }
+
+    public final class Channel {
+
+        private final IAnimationObserver mObserver;
+
+        private int mValue;
+        private int mFrom;
+        private int mTo;
+        private long mStart = 0;     // ns
+        private long mDuration = 0;  // ns
+        private boolean mRunning = false;
+
+        Channel(IAnimationObserver observer, int value) {
+            mObserver = observer;
+            mValue = value;
+            mFrom = value;
+            mTo = value;
+        }
+
+        /* Moves to the value in given time, starting from the value shown now */
+        public void animateTo(int to, int timeMs) {
+
+            if (timeMs <= 0 || to == mValue) {
+                jumpTo(to);
+                return;
+            }
+
+            mFrom = mValue;
+            mTo = to;
+            mStart = System.nanoTime();
+            mDuration = timeMs * 1000000L;
+
+            if (!mRunning) {
+                mRunning = true;
+                mRunningCount++;
+                schedule();
+            }
+        }
+
+        public void jumpTo(int value) {
+
+            stop();
+            mFrom = value;
+            mTo = value;
+
+            mValue = value;
+            mObserver.onStep(value);
+            mObserver.onFinish(value);
+        }
+
+        public void stop() {
+            if (mRunning) {
+                mRunning = false;
+                mRunningCount--;
+            }
+        }
+
+        /* Value shown now */
+        public int getValue() {
+            return mValue;
+        }
+
+        public int getTarget() {
+            return mTo;
+        }
+
+        public boolean isRunning() {
+            return mRunning;
+        }
+
+        // returns true while still moving
+        boolean step(long now) {
+
+            float t = (float) (now - mStart) / mDuration;
+            if (t >= 1) {
+                mRunning = false;
+                mRunningCount--;
+                if (mValue != mTo) {
+                    mValue = mTo;
+                    mObserver.onStep(mTo);
+                }
+                mObserver.onFinish(mTo);
+                return false;
+            }
+
+            if (t > 0) {
+                float eased = 1 - (1 - t) * (1 - t);  // ease out
+                int value = mFrom + Math.round((mTo - mFrom) * eased);
+                if (value != mValue) {
+                    mValue = value;
+                    mObserver.onStep(value);
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private final ArrayList<Channel> mChannels = new ArrayList<Channel>();
+    private int mRunningCount = 0;
+    private boolean mScheduled = false;
+
+    private int mFrames = 0;
+
+    private final Handler mHandler;
+    private final Object mFrameCallback;  // Choreographer.FrameCallback, null below API 16
+
+    public AnimationEngine() {
+
+        mHandler = new Handler();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameCallback = newFrameCallback();
+        } else {
+            mFrameCallback = null;
+        }
+    }
+
+    public Channel newChannel(IAnimationObserver observer, int value) {
+
+        Channel channel = new Channel(observer, value);
+        mChannels.add(channel);
+
+        return channel;
+    }
+
+    public void stopAll() {
+
+        for (Channel channel : mChannels) {
+            channel.stop();
+        }
+        unschedule();
+    }
+
+    public boolean isIdle() {
+        return mRunningCount == 0;
+    }
+
+    /* Frames animated so far, nothing is counted while idle */
+    public int getFrames() {
+        return mFrames;
+    }
+
+    private void doFrame(long now) {
+
+        mScheduled = false;
+        mFrames++;
+
+        for (int i = 0; i < mChannels.size(); i++) {
+            Channel channel = mChannels.get(i);
+            if (channel.mRunning) {
+                channel.step(now);
+            }
+        }
+
+        if (mRunningCount > 0) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+
+        if (mScheduled) {
+            return;
+        }
+        mScheduled = true;
+
+        if (mFrameCallback != null) {
+            postFrameCallback();
+        } else {
+            mHandler.postDelayed(mTick, FRAME_PERIOD);
+        }
+    }
+
+    private void unschedule() {
+
+        if (!mScheduled) {
+            return;
+        }
+        mScheduled = false;
+
+        if (mFrameCallback != null) {
+            removeFrameCallback();
+        } else {
+            mHandler.removeCallbacks(mTick);
+        }
+    }
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    };
+
+    @TargetApi(16)
+    private Object newFrameCallback() {
+        return new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                // frame time is System.nanoTime() based, as animation start times are
+                AnimationEngine.this.doFrame(frameTimeNanos);
+            }
+        };
+    }
+
+    @TargetApi(16)
+    private void postFrameCallback() {
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi(16)
+    private void removeFrameCallback() {
+        Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+}
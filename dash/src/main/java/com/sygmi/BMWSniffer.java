@@ -8,9 +8,9 @@
 
 package com.sygmi;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/* Decodes BMW frames with signals defined in SignalDatabase and reports them to IBMWSnooper.
+ * Signals are bound to snooper callbacks by name (SIGNAL_*), other signals are decoded
+ * but not reported, so new chassis only need another database file. */
 public class BMWSniffer {
 
     public final static int MAX_RPM = 5000;
@@ -22,28 +22,62 @@ public class BMWSniffer {
 
     public final static int MFL_TYPE_PHONE = 0;
 
+    // signal names known to the dash
+    public final static String SIGNAL_ENGINE_RPM = "EngineRPM";
+    public final static String SIGNAL_VEHICLE_SPEED = "VehicleSpeed";
+    public final static String SIGNAL_ENGINE_TEMP = "EngineTemperature";
+    public final static String SIGNAL_PDC_FRONT = "PdcFront";  // + sensor number 1..4
+    public final static String SIGNAL_PDC_REAR = "PdcRear";    // + sensor number 1..4
+    public final static String SIGNAL_MFL = "MflButtons";
+
+    private final static int PDC_SENSORS = 4;
+    private final static int MFL_PHONE = 0xC00C;
+
+    private final static int BIND_NONE = 0;
+    private final static int BIND_ENGINE_RPM = 1;
+    private final static int BIND_VEHICLE_SPEED = 2;
+    private final static int BIND_ENGINE_TEMP = 3;
+    private final static int BIND_PDC_FRONT = 4;
+    private final static int BIND_PDC_REAR = 5;
+    private final static int BIND_MFL = 6;
+
     private IBMWSnooper mSnooper = null;
 
-    private Map<String, Sniffer> mEvents = new HashMap<String, Sniffer>();
+    private final IdMap<Sniffer> mEvents = new IdMap<Sniffer>();
+
+    private final SignalDatabase mSignals;
+
+    private final byte[][] mPdc = new byte[2][PDC_SENSORS];  // indexed by PDC_TYPE_*
+
+    private int mUnmapped = 0;
+
+    public BMWSniffer(SignalDatabase signals) {
+
+        mSignals = signals;
+
+        for (SignalDatabase.Message message : signals.getMessages()) {
+            mEvents.put(message.id, new MessageSniffer(message));
+        }
+    }
 
     // ids supported
-    private static final int[] ids = new int[]{ 0xAA,    // RPM
-                                                0x1B4,   // Speed
-                                                0x1C2,   // PDC (Park Distance Control)
-                                                0x1D0,   // Engine temperature
-                                                0x1D6 }; // MFL (Steering Wheel)
-
-    public static int[] getIds() {
-        return ids;
+    public int[] getIds() {
+        return mSignals.getIds();
     }
 
-    public BMWSniffer() {
+    /* Decoders can be (un)registered at runtime, from the thread calling sniff().
+     * Returns previous decoder of the id */
+    public Sniffer register(int id, Sniffer sniffer) {
+        return mEvents.put(id, sniffer);
+    }
+
+    public Sniffer unregister(int id) {
+        return mEvents.remove(id);
+    }
 
-        mEvents.put(String.format("%X", ids[0]), new EngineRPM());
-        mEvents.put(String.format("%X", ids[1]), new VehicleSpeed());
-        mEvents.put(String.format("%X", ids[2]), new ParkDistanceControl());
-        mEvents.put(String.format("%X", ids[3]), new EngineTemperature());
-        mEvents.put(String.format("%X", ids[4]), new SteeringWheelInput());
+    /* Number of frames received with id not mapped to any decoder */
+    public int getUnmapped() {
+        return mUnmapped;
     }
 
     public void setSnooper(IBMWSnooper snooper) {
@@ -53,12 +87,19 @@ public class BMWSniffer {
         mSnooper = snooper;
     }
 
-    private abstract class Sniffer {
+    public abstract static class Sniffer {
 
         protected int mValue = -1;
 
-        abstract void job(long data, int len);
-    }   
+        public abstract void job(long data, int len);
+    }
+
+    // placed for unmapped ids after the first error, so it is reported once per id
+    private final static Sniffer UNMAPPED = new Sniffer() {
+        @Override
+        public void job(long data, int len) {
+        }
+    };
 
     public void sniff(String hex) throws BMWSnifferException {
 
@@ -74,138 +115,144 @@ public class BMWSniffer {
             return;
         }
 
-        Sniffer sniffer = mEvents.get(String.format("%X", fb.id));
-
-        if (sniffer != null) {
-            sniffer.job(fb.data, fb.len);
-
-        } else {
-            mSnooper.onError("id not mapped " + fb.id);
-        }
+        sniff(fb.id, fb.data, fb.len);
     }
 
-    private class EngineRPM extends Sniffer {
+    public void sniff(int id, long data, int len) throws BMWSnifferException {
 
-        @Override
-        public void job(long data, int len) {
+        if (mSnooper == null) {
+            throw new BMWSnifferException("Snooper not set!");
+        }
 
-            if (len != 8) {
-                mSnooper.onError("len for rpm id do not match, should be 8 but received " + len);
-                return;
-            }
+        Sniffer sniffer = mEvents.get(id);
 
-            mSnooper.onDebug("debug rpm hex " + String.format("%X", (data >> 16) & 0xFFFF));
-            short value = (short)((data >> 16) & (long)0xFFFF);
+        if (sniffer == UNMAPPED) {
+            mUnmapped++;
 
-            value = Short.reverseBytes(value);
-            value /=4;
+        } else if (sniffer != null) {
+            sniffer.job(data, len);
 
-            if (value >= 0 && value < MAX_RPM && value != mValue) {
-                mSnooper.onEngineRPMUpdated(mValue, value);
-                mValue = value;
-            }
+        } else {
+            mUnmapped++;
+            mEvents.put(id, UNMAPPED);
+            mSnooper.onError("id not mapped " + id);
         }
     }
 
-    private class VehicleSpeed extends Sniffer {
-
-        @Override
-        public void job(long data, int len) {
-
-            if (len != 8) {
-                mSnooper.onError("len for speed id do not match, should be 8 but received " + len);
-                return;
-            }
-
-            mSnooper.onDebug("debug speed hex " + String.format("%X", (data >> 48) & 0xFFFF));
-            short value = (short)((data >> 48) & (long)0xFFFF);
-            value -= 192;
-            value = Short.reverseBytes(value);
-            value /= 16;
-            value *= 1.6f;  // conversion mph to kmh
-
-            if (value >= 0 && value < MAX_SPEED && value != mValue) {
-                mSnooper.onVehicleSpeedUpdated(mValue, value);
-                mValue = value;
+    /* All signals of one message, decoded together and compared with last reported values */
+    private class MessageSniffer extends Sniffer {
+
+        private final String mName;
+        private final SignalDecoder mDecoder;
+        private final int[] mBindings;
+        private final int[] mSensors;  // PDC sensor index
+        private final int[] mValues;
+
+        MessageSniffer(SignalDatabase.Message message) {
+
+            mName = message.name;
+            mDecoder = new SignalDecoder(message);
+            mBindings = new int[mDecoder.size()];
+            mSensors = new int[mDecoder.size()];
+            mValues = new int[mDecoder.size()];
+
+            for (int i = 0; i < mBindings.length; i++) {
+                String name = message.getSignals().get(i).name;
+
+                if (name.equals(SIGNAL_ENGINE_RPM)) {
+                    mBindings[i] = BIND_ENGINE_RPM;
+                } else if (name.equals(SIGNAL_VEHICLE_SPEED)) {
+                    mBindings[i] = BIND_VEHICLE_SPEED;
+                } else if (name.equals(SIGNAL_ENGINE_TEMP)) {
+                    mBindings[i] = BIND_ENGINE_TEMP;
+                } else if (name.equals(SIGNAL_MFL)) {
+                    mBindings[i] = BIND_MFL;
+                } else if ((mSensors[i] = pdcSensor(name, SIGNAL_PDC_REAR)) >= 0) {
+                    mBindings[i] = BIND_PDC_REAR;
+                } else if ((mSensors[i] = pdcSensor(name, SIGNAL_PDC_FRONT)) >= 0) {
+                    mBindings[i] = BIND_PDC_FRONT;
+                } else {
+                    mBindings[i] = BIND_NONE;
+                }
+                mValues[i] = -1;
             }
         }
-    }
-
-    private class ParkDistanceControl extends Sniffer {
 
         @Override
         public void job(long data, int len) {
 
-            if (len != 8) {
-                mSnooper.onError("len for PDC id do not match, should be 8 but received " + len);
+            if (!mDecoder.decode(data, len)) {
+                mSnooper.onError("len for " + mName + " id do not match, should be "
+                        + mDecoder.getDlc() + " but received " + len);
                 return;
             }
 
-            mSnooper.onDebug("debug PDC hex " + String.format("%X", data));
-            // only rear value for now
-            int value = (int)((data >> 32) & (long)0xFFFFFFFF);
-
-            byte sensor1 = (byte)((value >> 24) & 0xFF);
-            byte sensor2 = (byte)((value >> 16) & 0xFF);
-            byte sensor3 = (byte)((value >> 8) & 0xFF);
-            byte sensor4 = (byte)(value & 0xFF);
+            boolean pdcFront = false;
+            boolean pdcRear = false;
 
-            if (value != mValue) {
-                mSnooper.onParkDistanceChanged(PDC_TYPE_REAR, sensor1, sensor2, sensor3, sensor4);
-                mValue = value;
-            }
-        }
-    }
-
-    private class EngineTemperature extends Sniffer {
+            for (int i = 0; i < mBindings.length; i++) {
+                if (mBindings[i] == BIND_NONE || !mDecoder.isValid(i)) {
+                    continue;
+                }
 
-        @Override
-        public void job(long data, int len) {
+                int value = (int) mDecoder.getValue(i);
+                int oldValue = mValues[i];
+                if (value == oldValue) {
+                    continue;
+                }
+                mValues[i] = value;
 
-            if (len != 8) {
-                mSnooper.onError("len for engine temp. id do not match, should be 8 but received " + len);
-                return;
+                switch (mBindings[i]) {
+                    case BIND_ENGINE_RPM:
+                        mSnooper.onEngineRPMUpdated(oldValue, value);
+                        break;
+                    case BIND_VEHICLE_SPEED:
+                        mSnooper.onVehicleSpeedUpdated(oldValue, value);
+                        break;
+                    case BIND_ENGINE_TEMP:
+                        mSnooper.onEngineTemperatureUpdated(oldValue, value);
+                        break;
+                    case BIND_PDC_FRONT:
+                        mPdc[PDC_TYPE_FRONT][mSensors[i]] = (byte) value;
+                        pdcFront = true;
+                        break;
+                    case BIND_PDC_REAR:
+                        mPdc[PDC_TYPE_REAR][mSensors[i]] = (byte) value;
+                        pdcRear = true;
+                        break;
+                    case BIND_MFL:
+                        if (value == MFL_PHONE) {
+                            mSnooper.onSteeringWheelInputTriggered(MFL_TYPE_PHONE);
+                        } else {
+                            mSnooper.onDebug("skipping MFL hex " + String.format("%X", value));
+                        }
+                        break;
+                }
             }
 
-            mSnooper.onDebug("debug engine temp. hex " + String.format("%X", (data >> 56) & 0xFF));
-            byte value = (byte)((data >> 56) & (long)0xFF);
-            value -= 48;
-
-            if (value >= 0 && value < MAX_ENGINE_TEMP && value != mValue) {
-                mSnooper.onEngineTemperatureUpdated(mValue, value);
-                mValue = value;
+            if (pdcFront) {
+                parkDistanceChanged(PDC_TYPE_FRONT);
+            }
+            if (pdcRear) {
+                parkDistanceChanged(PDC_TYPE_REAR);
             }
         }
     }
 
-    private class SteeringWheelInput extends Sniffer {
-
-        @Override
-        public void job(long data, int len) {
-
-            if (len != 2) {
-                mSnooper.onError("len for MFL id do not match, should be 2 but received " + len);
-                return;
-            }
-
-            mSnooper.onDebug("debug MFL hex " + String.format("%X", data & 0xFFFF));
-            short value = (short)(data & (long)0xFFFF);
-
-            //TODO: mask what needed
+    private void parkDistanceChanged(int type) {
+        byte[] sensors = mPdc[type];
+        mSnooper.onParkDistanceChanged(type, sensors[0], sensors[1], sensors[2], sensors[3]);
+    }
 
-            if (value != mValue) {
+    // sensor index for names like PdcRear1 .. PdcRear4, -1 when name does not match
+    private static int pdcSensor(String name, String prefix) {
 
-                switch (value) {
-                    case (short)0xC00C:
-                        mSnooper.onSteeringWheelInputTriggered(MFL_TYPE_PHONE);
-                        break;
-                    default:
-                        mSnooper.onDebug("skipping MFL hex " + String.format("%X", value));
-                        break;
-                }
-                mValue = value;
-            }
+        if (name.length() != prefix.length() + 1 || !name.startsWith(prefix)) {
+            return -1;
         }
+
+        int sensor = name.charAt(prefix.length()) - '1';
+        return sensor >= 0 && sensor < PDC_SENSORS ? sensor : -1;
     }
 
     public interface IBMWSnooper {
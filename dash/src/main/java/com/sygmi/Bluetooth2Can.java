@@ -14,9 +14,8 @@ import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
 import java.util.UUID;
@@ -36,7 +35,7 @@ public final class Bluetooth2Can extends CanDriver implements ComLink.ComLinkObs
     private BluetoothSocket mSocket = null;
     private BluetoothDevice mDevice = null;
 
-    private BufferedReader mInput = null;
+    private InputStream mInput = null;
     private OutputStream mOutput = null;
 
     private ComLink mLink = null;
@@ -111,13 +110,14 @@ public final class Bluetooth2Can extends CanDriver implements ComLink.ComLinkObs
             mSocket = mDevice.createRfcommSocketToServiceRecord(SSP_UUID);
             mSocket.connect();
             mOutput = mSocket.getOutputStream();
-            mInput = new BufferedReader(new InputStreamReader(mSocket.getInputStream()));
+            mInput = mSocket.getInputStream();
         } catch (IOException e) {
             Log.w(TAG, "Problem when connecting with bluetooth device " + e.toString());
             return false;
         }
 
         mLink = new ComLink(this, mInput, mOutput);
+        mLink.setOverflowPolicy(mOverflowPolicy);
 
         /* We skip baudrate and mode because those parameters are stored in non NVRAM in the device
          * Notice: hardware filters are used */
@@ -126,6 +126,16 @@ public final class Bluetooth2Can extends CanDriver implements ComLink.ComLinkObs
         return true;
     }
 
+    @Override
+    public int getMaxAcceptFilters() {
+        return 0;  // mapping is fixed in the FW side, frames are checked in software
+    }
+
+    @Override
+    public int getMaxRejectFilters() {
+        return 0;
+    }
+
     @Override
     public boolean setAcceptFilter(int idMin, int idMax) {
         if (mLink != null) {
@@ -135,6 +145,26 @@ public final class Bluetooth2Can extends CanDriver implements ComLink.ComLinkObs
         return false;
     }
 
+    @Override
+    public boolean wipe(int what) {
+        if (mLink != null && (what & INGRESS) != 0) {
+            mLink.wipe();
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean setFrameListener(FrameListener listener) {
+        if (mLink != null) {
+            mLink.setFrameListener(listener);
+            return true;
+        }
+
+        return false;
+    }
+
     @Override
     public void destroy() {
 
@@ -164,5 +194,14 @@ public final class Bluetooth2Can extends CanDriver implements ComLink.ComLinkObs
 
         return false;
     }
-}
 
+    @Override
+    public int receiveBatch(FrameBatch batch) {
+        batch.clear();
+        if (mLink != null) {
+            return mLink.receiveBatch(batch);
+        }
+
+        return 0;
+    }
+}
@@ -22,6 +22,10 @@ public abstract class CanDriver {
 
     protected boolean mIsConnected = false;
 
+    protected int mOverflowPolicy = FrameQueue.OVERFLOW_DROP_NEWEST;
+
+    private final CanFrame mBatchFrame = new CanFrame();
+
     public final static int MODE_NORMAL = 0;
     public final static int MODE_LISTEN_ONLY = 2;
     public final static int MODE_LOOPBACK = 4;
@@ -43,6 +47,11 @@ public abstract class CanDriver {
         public void onException(int code);
     }
 
+    /* Called from driver's receive thread when new frames can be fetched with receiveBatch() */
+    public interface FrameListener {
+        public void onFramesAvailable();
+    }
+
     public CanDriver(Context context) {
         mContext = context;
     }
@@ -112,6 +121,35 @@ public abstract class CanDriver {
         return false;
     }
 
+    /* Fills the batch with frames received so far and returns their count.
+     * Default adapter (used by native drivers) drains their fifo with receive() until it
+     * is empty or the batch is full */
+    public int receiveBatch(FrameBatch batch) {
+
+        batch.clear();
+        while (!batch.isFull() && receive(mBatchFrame)) {
+            batch.add(mBatchFrame);
+        }
+
+        return batch.count;
+    }
+
+    /* Returns true when driver notifies the listener about new frames,
+     * false means it has no receive thread of its own and has to be polled */
+    public boolean setFrameListener(FrameListener listener) {
+        return false;
+    }
+
+    /* Number of accept ranges driver can hold, 0 when it does not filter at all.
+     * Native drivers do not report a limit */
+    public int getMaxAcceptFilters() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int getMaxRejectFilters() {
+        return Integer.MAX_VALUE;
+    }
+
     public boolean setAcceptFilter(int idMin, int idMax) {
         return false;
     }
@@ -120,6 +158,14 @@ public abstract class CanDriver {
         return false;
     }
 
+    /* Policy applied when driver's receive queue is full, FrameQueue.OVERFLOW_DROP_NEWEST or
+     * OVERFLOW_DROP_OLDEST. Has to be set before initiate(), native drivers keep their own fifo */
+    public void setOverflowPolicy(int policy) {
+        mOverflowPolicy = policy;
+    }
+
+    /* Drops frames queued in the driver, what is INGRESS and/or EGRESS.
+     * Called from the thread receiving frames */
     public boolean wipe(int what) {
         return false;
     }
@@ -150,6 +196,72 @@ public abstract class CanDriver {
             this.timeStamp = frame.timeStamp;
         }
 
+        /* Payload packed into long, first byte is the most significant one
+         * eg. 8 bytes 20C4000000000000 gives 0x20C4000000000000 */
+        public long dataToLong() {
+
+            long value = 0;
+            int len = info & FRAME_DLC;
+            if (len > MAX_DATA_SIZE) {
+                len = MAX_DATA_SIZE;
+            }
+
+            for (int i = 0; i < len; i++) {
+                value = (value << 8) | (data[i] & 0xFF);
+            }
+
+            return value;
+        }
+
+    }
+
+    /* Struct of arrays frame container, reused between receiveBatch calls */
+    public static class FrameBatch {
+
+        public final int[] ids;
+        public final long[] data;
+        public final byte[] dlc;
+        public final byte[] flags;
+        public final long[] timeStamps;
+
+        public int count = 0;
+
+        public FrameBatch(int capacity) {
+
+            ids = new int[capacity];
+            data = new long[capacity];
+            dlc = new byte[capacity];
+            flags = new byte[capacity];
+            timeStamps = new long[capacity];
+        }
+
+        public int capacity() {
+            return ids.length;
+        }
+
+        public boolean isFull() {
+            return count == ids.length;
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public boolean add(CanFrame frame) {
+
+            if (isFull()) {
+                return false;
+            }
+
+            ids[count] = frame.id;
+            data[count] = frame.dataToLong();
+            dlc[count] = (byte) (frame.info & FRAME_DLC);
+            flags[count] = (byte) (frame.info & ~FRAME_DLC);
+            timeStamps[count] = frame.timeStamp;
+            count++;
+
+            return true;
+        }
     }
 
 }
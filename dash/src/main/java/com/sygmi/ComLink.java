@@ -9,34 +9,46 @@
 package com.sygmi;
 
 import android.util.Log;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 /* This is simple communication link driver that fetches hex string data from custom device
+ * Data is read in byte chunks and decoded in java, see SlcanDecoder
+ * Firmware is asked to stream frames, if it can not, frames are polled with pipelined requests,
+ * see FirmwareProtocol
+ * Works either on blocking streams with own poll thread or on shared NioTransport
  * Only RX path is available */
 public final class ComLink {
 
     private static final String TAG = "ComLink";
 
-    private final static String FWCMD_READ_INFO = "C01\r";  // not used for now
-    private final static String FWCMD_READ_FRAMES = "C02\r";
+    // package access for FirmwareBenchmark
+    final static int POLL_PERIOD = 100;  // ms
+    final static int PIPELINE_DEPTH = 4;  // requests sent per poll period
+    final static int PIPELINE_PERIOD = POLL_PERIOD / PIPELINE_DEPTH;  // ms
+    final static int PROBE_TIME = 300;  // ms, time for firmware to acknowledge streaming
+    private final static int RING_SIZE = 128;
+    private final static int READ_CHUNK_SIZE = 512;
 
-    private BufferedReader mInput = null;
+    private InputStream mInput = null;
     private OutputStream mOutput = null;
 
     private Thread mPollThread = null;
+    private NioTransport.Endpoint mEndpoint = null;
 
-    private ArrayList<CanDriver.CanFrame> mFrames = null;
+    private FrameRing mFrames = null;
 
-    private int mFilters = 0;
+    private final SlcanDecoder mDecoder = new SlcanDecoder();
+    private final byte[] mBuffer = new byte[READ_CHUNK_SIZE];
 
-    private Lock mLock = new ReentrantLock();
-    private Condition mCondition = mLock.newCondition();
+    private final FirmwareProtocol mProtocol = new FirmwareProtocol(true,
+            TimeUnit.MILLISECONDS.toNanos(PROBE_TIME), TimeUnit.MILLISECONDS.toNanos(PIPELINE_PERIOD));
+
+    private volatile boolean mDestroyed = false;
 
     private ComLinkObserver mObserver = null;
 
@@ -44,23 +56,47 @@ public final class ComLink {
         public void onException(int code);
     }
 
-    public ComLink(ComLinkObserver observer, BufferedReader input, OutputStream output) {
+    public ComLink(ComLinkObserver observer, InputStream input, OutputStream output) {
 
         mObserver = observer;
         mInput = input;
         mOutput = output;
 
-        mFrames = new ArrayList<CanDriver.CanFrame>();
+        mFrames = new FrameRing(RING_SIZE);
 
         mPollThread = new Thread(new PollThread());
         mPollThread.start();
     }
 
+    /* Link driven by selector thread of the transport, no thread of its own */
+    public ComLink(ComLinkObserver observer, NioTransport transport, InetSocketAddress address) throws IOException {
+
+        mObserver = observer;
+
+        mFrames = new FrameRing(RING_SIZE);
+
+        mEndpoint = transport.open(address, new TransportHandler(), PIPELINE_PERIOD);
+    }
+
+    public boolean awaitConnected(int timeoutMs) {
+        return mEndpoint == null || mEndpoint.awaitConnected(timeoutMs);
+    }
+
     public void destroy() {
 
-        mLock.lock();
-        mCondition.signalAll();
-        mLock.unlock();
+        mDestroyed = true;
+        mFrames.close();
+
+        if (mEndpoint != null) {
+            mEndpoint.close();
+        }
+
+        try {
+            if (mInput != null) {
+                mInput.close();  // unblocks streaming read
+            }
+        } catch (IOException e) {
+        }
 
         try {
             if (mPollThread != null) {
@@ -72,28 +108,37 @@ public final class ComLink {
     }
 
     public boolean receive(CanDriver.CanFrame frame) {
-        boolean status = false;
+        return mFrames.take(frame);
+    }
 
-        mLock.lock();
-        try {
-            if (mFrames.isEmpty()) {
-                Log.w(TAG, "waiting ... ");
-                mCondition.await();
-            }
+    public boolean poll(CanDriver.CanFrame frame) {
+        return mFrames.poll(frame);
+    }
 
-            if (!mFrames.isEmpty()) {
-                Log.w(TAG, "receive ... ");
-                CanDriver.CanFrame tmp = mFrames.remove(0);
-                frame.clone(tmp);
-                status = true;
-            }
-        } catch (InterruptedException e) {
+    // appends to the batch
+    public int receiveBatch(CanDriver.FrameBatch batch) {
+        return mFrames.drainTo(batch);
+    }
 
-        } finally {
-            mLock.unlock();
-        }
+    public void setFrameListener(CanDriver.FrameListener listener) {
+        mFrames.setListener(listener);
+    }
 
-        return status;
+    public void setOverflowPolicy(int policy) {
+        mFrames.setOverflowPolicy(policy);
+    }
+
+    // consumer side, drops frames received so far
+    public int wipe() {
+        return mFrames.clear();
+    }
+
+    public int getDropped() {
+        return mFrames.getDropped();
+    }
+
+    public int getOverflows() {
+        return mFrames.getOverflows();
     }
 
     private class PollThread implements Runnable {
@@ -101,60 +146,107 @@ public final class ComLink {
         @Override
         public void run() {
 
-            while (!Thread.currentThread().isInterrupted()) {
+            try {
+                write(mProtocol.start(System.nanoTime()));
+
+                while (!Thread.currentThread().isInterrupted()) {
+
+                    if (mProtocol.isStreaming()) {
+                        // firmware pushes frames, just wait for them
+                        int count = mInput.read(mBuffer, 0, mBuffer.length);
+                        if (count < 0) {
+                            throw new IOException("End of stream");
+                        }
+                        if (mDecoder.decode(mBuffer, 0, count, mFrames) > 0) {
+                            mFrames.signal();
+                        }
+                        mProtocol.onReply(mDecoder.takeReply());
+                        continue;
+                    }
 
-                try {
-                    String cmd = FWCMD_READ_FRAMES;  // read command, firmware specific
-                    mOutput.write(cmd.getBytes());
-                    mOutput.flush();
-                } catch (IOException e) {
-                    Log.w(TAG, "Write error" + e.toString());
+                    write(mProtocol.poll(System.nanoTime()));
+
+                    // no lock is held here, consumer does not wait for socket reads
+                    int frames = 0;
+                    int available;
+                    while ((available = mInput.available()) > 0) {
+                        int count = mInput.read(mBuffer, 0, Math.min(available, mBuffer.length));
+                        if (count < 0) {
+                            throw new IOException("End of stream");
+                        }
+                        frames += mDecoder.decode(mBuffer, 0, count, mFrames);
+                    }
+
+                    mProtocol.onReply(mDecoder.takeReply());
+                    if (frames > 0) {
+                        mFrames.signal();
+                    }
+
+                    Thread.sleep(PIPELINE_PERIOD);
+                }
+            } catch (IOException e) {
+                if (!mDestroyed) {
+                    Log.w(TAG, "Link error" + e.toString());
                     mObserver.onException(-1);
-                    break;
                 }
+            } catch (InterruptedException e) {
+            }
+        }
 
-                mLock.lock();
-                try {
-                    for (int i = 0; i < mFilters; i++ ) {
-                        if (!mInput.ready())
-                            break;
+        private void write(byte[] command) throws IOException {
+            if (command != null) {
+                mOutput.write(command);  // firmware specific
+                mOutput.flush();
+            }
+        }
+    }
 
-                        String data = null;
-                        CanDriver.CanFrame frame = new CanDriver.CanFrame();
-                        data = mInput.readLine();
+    private class TransportHandler implements NioTransport.EndpointListener {
 
-                        Log.w(TAG, "RX DATA " + data);
-                        Helpers.string2canframe(data, (Object) frame);
-                        mFrames.add(frame);
-                        mCondition.signal();
-                    }
-                } catch (IOException e) {
-                    Log.w(TAG, "Read error" + e.toString());
-                    mObserver.onException(-1);
-                    break;
-                } finally {
-                    mLock.unlock();
-                }
+        @Override
+        public void onConnected(NioTransport.Endpoint endpoint) {
+            Log.w(TAG, "Connected");
+            write(endpoint, mProtocol.start(System.nanoTime()));
+        }
 
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    break;
-                }
+        @Override
+        public void onData(NioTransport.Endpoint endpoint, ByteBuffer data) {
+            int frames = mDecoder.decode(data, mFrames);
+            mProtocol.onReply(mDecoder.takeReply());
+            if (frames > 0) {
+                mFrames.signal();
+            }
+        }
 
+        @Override
+        public void onTick(NioTransport.Endpoint endpoint) {
+            write(endpoint, mProtocol.poll(System.nanoTime()));
+        }
+
+        private void write(NioTransport.Endpoint endpoint, byte[] command) {
+            if (command != null) {
+                endpoint.write(command);  // firmware specific
             }
         }
+
+        @Override
+        public void onClosed(NioTransport.Endpoint endpoint, IOException e) {
+            Log.w(TAG, "Connection error" + e.toString());
+            mObserver.onException(-1);
+        }
     }
 
     public boolean setFiltering(int idMin, int idMax) {
-        /* Notice: we have set correct filter mapping in the FW side
-        * We have some dummy calculation here */
-        int count = idMax - idMin;
-        mFilters += count;
-        if (count == 0)
-            mFilters++;
-
+        /* Notice: we have set correct filter mapping in the FW side */
         return true;
     }
+
+    public int getDecodeErrors() {
+        return mDecoder.getErrors();
+    }
+
+    public boolean isStreaming() {
+        return mProtocol.isStreaming();
+    }
 }
 
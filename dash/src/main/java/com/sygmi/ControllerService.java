@@ -12,10 +12,16 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
 public class ControllerService extends Service implements CanDriver.CanDriverMonitor,Watchdog.WatchdogMaster {
 
     private static final String TAG = "CANControllerService";
@@ -27,18 +33,25 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
 
     private static final int MSG_CONTROLLER_ATTACHED = 0;
     private static final int MSG_CONTROLLER_DETACHED = 1;
-    private static final int MSG_CONTROLLER_DATA_RECEIVED = 2;
     private static final int MSG_CONTROLLER_TIMEOUT = 3;
     private static final int MSG_CONTROLLER_ERROR = 0xFF;
 
     private static final int MAX_CONNECTION_ATTEMPTS = 3;
 
+    private static final int FRAME_BATCH_SIZE = 64;
+
+    /* Frames received this late after the service thread meant to receive again means a stall
+     * (GC pause, radio link hiccup), backlog is dropped and reception resumes with fresh frames.
+     * Waiting for the driver to signal new frames on an idle bus is not a stall */
+    private static final int CATCH_UP_STALL = 500;  // ms
+
     private final LocalBinder mBinder = new LocalBinder();
 
     public static final int TYPE_DEFAULT = DEVICE_USB;
     public static final int MODE_DEFAULT = CanDriver.MODE_NORMAL;
     public static final int BAUDRATE_DEFAULT = 100;  // 100kbps
     public static final int TIMEOUT_DEFAULT = 0;
+    public static final int OVERFLOW_DEFAULT = FrameQueue.OVERFLOW_DROP_OLDEST;
 
     public static final String EXTRA_TYPE = "extra.TYPE";
     public static final String EXTRA_MODE = "extra.MODE";
@@ -46,16 +59,20 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
     public static final String EXTRA_IDS = "extra.IDS";
     public static final String EXTRA_TIMEOUT = "extra.TIMEOUT";
     public static final String EXTRA_AUX_DATA = "extra.AUX_DATA";
+    public static final String EXTRA_OVERFLOW = "extra.OVERFLOW";
+    public static final String EXTRA_CATCH_UP = "extra.CATCH_UP";
 
-    private IControllerObserver mObserver = null;
+    private final CopyOnWriteArrayList<IControllerObserver> mObservers = new CopyOnWriteArrayList<IControllerObserver>();
     private int mType = -1;
     private int mMode = -1;
     private int mBaudrate = -1;
-    private int mScanPeriod = 10;  // 10ms
+    private int mScanPeriod = 10;  // 10ms, used only for drivers without frame listener
     private int[] mIds = null;
     private String mAuxData = null;
+    private int mOverflowPolicy = OVERFLOW_DEFAULT;  // of driver's receive queue
+    private boolean mCatchUp = true;
 
-    private boolean mAttached = false;
+    private volatile boolean mAttached = false;
 
     private Thread mServiceThread = null;
     private Watchdog mWatchdog = null;
@@ -64,6 +81,13 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
 
     private int mConnectAttempt = MAX_CONNECTION_ATTEMPTS;
 
+    /* Default delivery thread of subscriptions, frames are not delivered on the main thread */
+    private HandlerThread mDecodeThread = null;
+
+    /* Copied on write, so service thread walks it without locks or allocations */
+    private final Object mSubscriptionLock = new Object();
+    private volatile FrameSubscription[] mSubscriptions = new FrameSubscription[0];
+
     /* CAN device */
     private CanDriver mDevice = null;
 
@@ -76,36 +100,29 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
                     String label = (String) msg.obj;
                     Log.w(TAG, "Controller attached !");
                     mAttached = true;
-                    if (mObserver != null) {
-                        mObserver.onConnected(label);
+                    for (IControllerObserver observer : mObservers) {
+                        observer.onConnected(label);
                     }
                     break;
                 case MSG_CONTROLLER_DETACHED:
                     Log.w(TAG, "Controller detached !");
-                    if (mObserver != null) {
-                        mObserver.onDisconnected();
+                    for (IControllerObserver observer : mObservers) {
+                        observer.onDisconnected();
                     }
                     mAttached = false;
                     break;
-                case MSG_CONTROLLER_DATA_RECEIVED:
-                    String data = (String) msg.obj;
-                    //Log.w(TAG, "Controller received data: " + data);
-                    if (mObserver != null && mAttached) {
-                        mObserver.onDataReceived(data);
-                    }
-                    break;
                 case MSG_CONTROLLER_TIMEOUT:
                     Log.w(TAG, "Controller timeout !");
-                    if (mObserver != null) {
-                        mObserver.onTimeout();
+                    for (IControllerObserver observer : mObservers) {
+                        observer.onTimeout();
                     }
                     mAttached = false;
                     break;
                 case MSG_CONTROLLER_ERROR:
                     String err = (String) msg.obj;
                     Log.w(TAG, "Controller error occured: " + err);
-                    if (mObserver != null) {
-                        mObserver.onError(err);
+                    for (IControllerObserver observer : mObservers) {
+                        observer.onError(err);
                     }
                     mAttached = false;
                     break;
@@ -113,14 +130,21 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
         }
     };
 
+    /* Called on the main thread, frames are received through subscribe() */
     public interface IControllerObserver {
         public void onConnected(String label);
         public void onDisconnected();
-        public void onDataReceived(String event);
         public void onTimeout();
         public void onError(String error);
     }
 
+    /* Called from service thread for frames with payload different than the previous one,
+     * see FrameSubscription.setFrameFilter() */
+    public interface IFrameFilter {
+        public boolean accept(int id, int len, long data);
+        public void forget(int id);  // frame accepted last was lost, let the next one pass
+    }
+
     public int getDeviceType() {
         if (mDevice instanceof Usb2Can) {
             return DEVICE_USB;
@@ -154,10 +178,56 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
     }
 
     public void registerObserver(IControllerObserver observer) {
-        if (mObserver != null) {
-            return;
+        mObservers.addIfAbsent(observer);
+    }
+
+    public void unregisterObserver(IControllerObserver observer) {
+        mObservers.remove(observer);
+    }
+
+    /* Frames received are published to every subscription, filtered by its ids
+     * and delivered on its thread. Can be called from any thread */
+    public void subscribe(FrameSubscription subscription) {
+
+        synchronized (mSubscriptionLock) {
+            FrameSubscription[] old = mSubscriptions;
+            for (FrameSubscription s : old) {
+                if (s == subscription) {
+                    return;
+                }
+            }
+
+            FrameSubscription[] subscriptions = new FrameSubscription[old.length + 1];
+            System.arraycopy(old, 0, subscriptions, 0, old.length);
+            subscriptions[old.length] = subscription;
+
+            subscription.attach(mDecodeThread.getLooper());
+            mSubscriptions = subscriptions;
+        }
+    }
+
+    public void unsubscribe(FrameSubscription subscription) {
+
+        synchronized (mSubscriptionLock) {
+            FrameSubscription[] old = mSubscriptions;
+            int index = -1;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == subscription) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+
+            FrameSubscription[] subscriptions = new FrameSubscription[old.length - 1];
+            System.arraycopy(old, 0, subscriptions, 0, index);
+            System.arraycopy(old, index + 1, subscriptions, index, old.length - index - 1);
+
+            mSubscriptions = subscriptions;
+            subscription.detach();
         }
-        mObserver = observer;
     }
 
     public void setScanPeriod(int scanPeriod) {
@@ -171,6 +241,9 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
 
         super.onCreate();
 
+        mDecodeThread = new HandlerThread("CanDecode", Process.THREAD_PRIORITY_DISPLAY);
+        mDecodeThread.start();
+
         mServiceThread = new Thread(new ServiceThread());
     }
 
@@ -202,6 +275,8 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
         mIds = intent.getIntArrayExtra(EXTRA_IDS);
         mTimeout = intent.getIntExtra(EXTRA_TIMEOUT, TIMEOUT_DEFAULT);
         mAuxData = intent.getStringExtra(EXTRA_AUX_DATA);
+        mOverflowPolicy = intent.getIntExtra(EXTRA_OVERFLOW, OVERFLOW_DEFAULT);
+        mCatchUp = intent.getBooleanExtra(EXTRA_CATCH_UP, true);
 
         Log.w(TAG, "Starting service");
 
@@ -224,6 +299,14 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
         mDevice = null;
         mWatchdog.hug();
 
+        synchronized (mSubscriptionLock) {
+            for (FrameSubscription subscription : mSubscriptions) {
+                subscription.detach();
+            }
+            mSubscriptions = new FrameSubscription[0];
+        }
+        mDecodeThread.quit();
+
         super.onDestroy();
 
         Log.w(TAG, "Service stopped !");
@@ -247,12 +330,19 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
         Log.w(TAG, "Got watchdog bark !");
     }
 
-    private class ServiceThread implements Runnable {
+    private class ServiceThread implements Runnable, CanDriver.FrameListener {
+
+        @Override
+        public void onFramesAvailable() {
+            // called from driver receive thread
+            LockSupport.unpark(mServiceThread);
+        }
 
         @Override
         public void run() {
 
             boolean status;
+            boolean pushMode;
 
             switch (mType) {
                 case DEVICE_USB:
@@ -271,6 +361,7 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
                     break;
             }
 
+            mDevice.setOverflowPolicy(mOverflowPolicy);
             status = mDevice.initiate(mBaudrate, mMode);
             mWatchdog.giveMeat(mTimeout);
 
@@ -284,49 +375,103 @@ public class ControllerService extends Service implements CanDriver.CanDriverMon
                 return;
             }
 
-            for (int i = 0; i < mIds.length; i++) {
-                Log.w(TAG, "Accepting filter for id " + String.format("%X", mIds[i]));
-                mDevice.setAcceptFilter(mIds[i], mIds[i]);
+            // as few hardware ranges as driver holds, exact check is done in software
+            FilterPlanner.Plan plan = FilterPlanner.plan(mIds,
+                    mDevice.getMaxAcceptFilters(), mDevice.getMaxRejectFilters());
+
+            for (int i = 0; i < plan.acceptMin.length; i++) {
+                Log.w(TAG, "Accepting filter for ids " + String.format("%X-%X", plan.acceptMin[i], plan.acceptMax[i]));
+                if (!mDevice.setAcceptFilter(plan.acceptMin[i], plan.acceptMax[i])) {
+                    Log.w(TAG, "Accept filter not set, relying on software filter");
+                }
             }
+            for (int i = 0; i < plan.rejectMin.length; i++) {
+                Log.w(TAG, "Rejecting filter for ids " + String.format("%X-%X", plan.rejectMin[i], plan.rejectMax[i]));
+                mDevice.setRejectFilter(plan.rejectMin[i], plan.rejectMax[i]);
+            }
+            if (plan.acceptsAll()) {
+                Log.w(TAG, "No hardware filtering, all frames checked in software");
+            } else {
+                Log.w(TAG, "Hardware filters let through " + plan.getExtraIds(mIds.length) + " extra ids");
+            }
+
+            IdFilter ids = new IdFilter(mIds);
+
+            // drivers with own receive thread wake us up, others are polled every scan period
+            pushMode = mDevice.setFrameListener(this);
+            Log.w(TAG, pushMode ? "Driver pushes frames" : "Driver is polled every " + mScanPeriod + "ms");
 
-            CanDriver.CanFrame frame = new CanDriver.CanFrame();
+            CanDriver.FrameBatch batch = new CanDriver.FrameBatch(FRAME_BATCH_SIZE);
+
+            long due = 0;  // uptime when next receive was meant to happen, 0 while waiting for the driver
+            int catchUps = 0;
 
             while (!Thread.currentThread().isInterrupted()) {
-                // start HW and loop for rx data
-                boolean lastStatus = true;
+                // start HW and loop for rx data, everything available is drained at once
+                FrameSubscription[] subscriptions = mSubscriptions;
 
                 mWatchdog.giveMeat(mTimeout);
-                status = mDevice.receive(frame);
-
-                // skip rtr type frames
-                if ((frame.info & CanDriver.FRAME_RTR) == CanDriver.FRAME_RTR) {
-                    status = false;
-                    lastStatus = true;
+                int count = mDevice.receiveBatch(batch);
+
+                long received = SystemClock.uptimeMillis();
+                if (mCatchUp && count > 0 && due != 0 && received - due > CATCH_UP_STALL) {
+                    // stale backlog, jump to current values instead of replaying it
+                    mDevice.wipe(CanDriver.INGRESS);
+                    count = 0;
+                    catchUps++;
+                    Log.w(TAG, "Stalled for " + (received - due) + "ms, receive queue wiped");
                 }
 
-                // we should not never get 0 length frame !
-                if ((frame.info & CanDriver.FRAME_DLC) == 0) {
-                    status = false;
-                }
+                for (int i = 0; i < count; i++) {
+                    // skip rtr type frames
+                    if ((batch.flags[i] & CanDriver.FRAME_RTR) == CanDriver.FRAME_RTR) {
+                        continue;
+                    }
 
-                if (status) {
-                    String hexFrame = Helpers.frame2hex(frame.id, frame.data,
-                            frame.info & CanDriver.FRAME_DLC);
+                    // we should not never get 0 length frame !
+                    if (batch.dlc[i] == 0) {
+                        continue;
+                    }
+
+                    int id = batch.ids[i];
+                    boolean extended = (batch.flags[i] & CanDriver.FRAME_EXT) != 0;
+                    if (!ids.accept(id, extended)) {
+                        continue;
+                    }
 
-                    mHandler.obtainMessage(MSG_CONTROLLER_DATA_RECEIVED, hexFrame).sendToTarget();
-                } else if (!lastStatus) {
-                    mHandler.obtainMessage(MSG_CONTROLLER_TIMEOUT).sendToTarget();
+                    for (FrameSubscription subscription : subscriptions) {
+                        subscription.offer(id, extended, batch.dlc[i], batch.data[i], batch.timeStamps[i]);
+                    }
                 }
 
-                lastStatus = status;
+                for (FrameSubscription subscription : subscriptions) {
+                    subscription.schedule();
+                }
 
-                try {
-                    Thread.sleep(mScanPeriod);
-                } catch (InterruptedException e) {
-                    break;
+                if (batch.isFull()) {
+                    // backlog, drain it without waiting
+                    due = received;
+                } else if (pushMode) {
+                    // sleep until driver signals new frames
+                    due = 0;
+                    LockSupport.park(this);
+                } else {
+                    due = received + mScanPeriod;
+                    try {
+                        Thread.sleep(mScanPeriod);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
                 }
             }
 
+            mDevice.setFrameListener(null);
+
+            Log.w(TAG, "Frames rejected in software: " + ids.getRejected() + ", catch ups: " + catchUps);
+            for (FrameSubscription subscription : mSubscriptions) {
+                Log.w(TAG, "Subscription: " + subscription.getStats());
+            }
+
             mHandler.obtainMessage(MSG_CONTROLLER_DETACHED).sendToTarget();
         }
     }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+/* Bounded single producer / single consumer queue of decoded events, each one
+ * is an event type and two int arguments kept in preallocated arrays.
+ * Instrumented the same way as FrameQueue. */
+public final class EventQueue {
+
+    private final int mMask;
+
+    private final int[] mWhats;
+    private final int[] mArgs1;
+    private final int[] mArgs2;
+
+    private volatile int mHead = 0;  // written by consumer only
+    private volatile int mTail = 0;  // written by producer only
+
+    private volatile int mOffered = 0;
+    private volatile int mDropped = 0;
+    private volatile int mHighWatermark = 0;  // most events queued at once
+
+    public interface EventSink {
+        public void onEvent(int what, int arg1, int arg2);
+    }
+
+    public EventQueue(int capacity) {
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mWhats = new int[size];
+        mArgs1 = new int[size];
+        mArgs2 = new int[size];
+    }
+
+    // producer side, returns false when event was dropped because queue is full
+    public boolean offer(int what, int arg1, int arg2) {
+
+        int tail = mTail;
+        int size = tail - mHead;
+
+        mOffered++;
+        if (size > mMask) {
+            mDropped++;
+            return false;
+        }
+        if (size >= mHighWatermark) {
+            mHighWatermark = size + 1;
+        }
+
+        int idx = tail & mMask;
+        mWhats[idx] = what;
+        mArgs1[idx] = arg1;
+        mArgs2[idx] = arg2;
+
+        mTail = tail + 1;  // publish
+        return true;
+    }
+
+    // consumer side, returns number of events passed to the sink
+    public int drain(EventSink sink) {
+
+        int head = mHead;
+        int tail = mTail;
+        int count = tail - head;
+
+        while (head != tail) {
+            int idx = head & mMask;
+            sink.onEvent(mWhats[idx], mArgs1[idx], mArgs2[idx]);
+            mHead = ++head;
+        }
+
+        return count;
+    }
+
+    // consumer side
+    public void clear() {
+        mHead = mTail;
+    }
+
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+
+    public int size() {
+        return mTail - mHead;
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    public int getOffered() {
+        return mOffered;
+    }
+
+    public int getDropped() {
+        return mDropped;
+    }
+
+    public int getHighWatermark() {
+        return mHighWatermark;
+    }
+
+    public String getStats() {
+        return "offered " + mOffered + ", dropped " + mDropped
+                + ", max queued " + mHighWatermark + "/" + capacity();
+    }
+}
@@ -14,10 +14,6 @@ import android.os.Looper;
 import android.util.Log;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class FakeDevice extends CanDriver implements Runnable {
 
@@ -25,13 +21,22 @@ public class FakeDevice extends CanDriver implements Runnable {
 
     public final static String DEVICE_NAME = "FAKEDEVICE";
 
+    private final static int RING_SIZE = 16;
+
     private Handler mFeedHandler;
     private Thread mFeedThread;
-    private Lock mLock = new ReentrantLock();
-    private Condition mCondition = mLock.newCondition();
-    private ArrayList<CanFrame> mFrames = new ArrayList<CanFrame>();
+    private FrameRing mFrames = new FrameRing(RING_SIZE);
+    private SlcanDecoder mDecoder = new SlcanDecoder();
     private int mCounter = 0;
 
+    // the same records as sent by firmware
+    private final byte[] mRecords = ("S1B4N20C4000000000000\r" +  // Speed
+                                     "SAAN00000000340D0000\r" +    // RPM
+                                     "S1D0N8B00000000000000\r" +   // Engine temp.
+                                     "S1C2N8D725B5AFFFFFFFF\r").getBytes();  // PDC
+    private final byte[] mMflRecord = "S1D6NC000\r".getBytes();
+    private final int MFL_COUNTER_POS = 8;
+
     public FakeDevice(Context context) {
         super(context);
 
@@ -46,40 +51,12 @@ public class FakeDevice extends CanDriver implements Runnable {
     @Override
     public void run() {
         if (mIsConnected) {
-            mLock.lock();
-            String data;
-            CanFrame frame;
-
-            data = "S1B4N20C4000000000000";  // Speed
-            frame = new CanFrame();
-            //Log.w(TAG, "RX DATA " + data);
-            Helpers.string2canframe(data, (Object) frame);
-            mFrames.add(frame);
-            data = "SAAN00000000340D0000";  // RPM
-            frame = new CanFrame();
-            //Log.w(TAG, "RX DATA " + data);
-            Helpers.string2canframe(data, (Object) frame);
-            mFrames.add(frame);
-            data = "S1D0N8B00000000000000"; // Engine temp.
-            frame = new CanFrame();
-            //Log.w(TAG, "RX DATA " + data);
-            Helpers.string2canframe(data, (Object) frame);
-            mFrames.add(frame);
-            data = "S1C2N8D725B5AFFFFFFFF"; // PDC
-            frame = new CanFrame();
-            //Log.w(TAG, "RX DATA " + data);
-            Helpers.string2canframe(data, (Object) frame);
-            mFrames.add(frame);
-            data = "S1D6NC00" + String.format("%X", mCounter);
+            mDecoder.decode(mRecords, 0, mRecords.length, mFrames);
+            mMflRecord[MFL_COUNTER_POS] = (byte) Character.forDigit(mCounter, 16);
+            mDecoder.decode(mMflRecord, 0, mMflRecord.length, mFrames);
+            mFrames.signal();
             mCounter += 1;
             mCounter %= 15;
-            frame = new CanFrame();
-            //Log.w(TAG, "RX DATA " + data);
-            Helpers.string2canframe(data, (Object) frame);
-            mFrames.add(frame);
-
-            mCondition.signal();
-            mLock.unlock();
         }
         mFeedHandler.postDelayed(this, 1000);
     }
@@ -87,15 +64,40 @@ public class FakeDevice extends CanDriver implements Runnable {
     @Override
     public boolean initiate(int baudRate, int mode) {
         super.initiate(baudRate, mode);
+        mFrames.setOverflowPolicy(mOverflowPolicy);
+        return true;
+    }
+
+    @Override
+    public int getMaxAcceptFilters() {
+        return 0;  // no filtering, frames are checked in software
+    }
+
+    @Override
+    public int getMaxRejectFilters() {
+        return 0;
+    }
+
+    @Override
+    public boolean wipe(int what) {
+        if ((what & INGRESS) != 0) {
+            mFrames.clear();
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean setFrameListener(FrameListener listener) {
+        mFrames.setListener(listener);
         return true;
     }
 
     @Override
     public void destroy() {
         mIsConnected = false;
-        mLock.lock();
-        mCondition.signalAll();
-        mLock.unlock();
+        mFrames.close();
         mFeedThread.interrupt();
         super.destroy();
     }
@@ -107,27 +109,12 @@ public class FakeDevice extends CanDriver implements Runnable {
 
     @Override
     public boolean receive(CanDriver.CanFrame frame) {
-        boolean status = false;
-
-        mLock.lock();
-        try {
-            if (mFrames.isEmpty()) {
-                //Log.w(TAG, "waiting ... ");
-                mCondition.await();
-            }
-
-            if (!mFrames.isEmpty()) {
-                //Log.w(TAG, "receive ... ");
-                CanFrame tmp = mFrames.remove(0);
-                frame.clone(tmp);
-                status = true;
-            }
-        } catch (InterruptedException e) {
-        } finally {
-            mLock.unlock();
-        }
+        return mFrames.take(frame);
+    }
 
-        return status;
+    @Override
+    public int receiveBatch(FrameBatch batch) {
+        batch.clear();
+        return mFrames.drainTo(batch);
     }
 }
-
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.Arrays;
+
+/* Turns a set of ids into as few hardware acceptance ranges as the driver can hold.
+ * Consecutive ids become one range. When there are still more ranges than accept filters,
+ * ranges separated by the smallest gaps are joined; the widest of the gaps joined that way
+ * are then taken out with reject filters, if driver has any. Whatever hardware lets through
+ * is checked exactly in software with IdFilter. Ranges never cross 11/29 bit id boundary. */
+public final class FilterPlanner {
+
+    public final static class Plan {
+
+        public final int[] acceptMin;
+        public final int[] acceptMax;
+        public final int[] rejectMin;
+        public final int[] rejectMax;
+
+        Plan(int[] acceptMin, int[] acceptMax, int[] rejectMin, int[] rejectMax) {
+            this.acceptMin = acceptMin;
+            this.acceptMax = acceptMax;
+            this.rejectMin = rejectMin;
+            this.rejectMax = rejectMax;
+        }
+
+        /* No hardware filter at all, everything goes to software */
+        public boolean acceptsAll() {
+            return acceptMin.length == 0;
+        }
+
+        /* Ids hardware lets through although they are not wanted, meaningless when acceptsAll() */
+        public long getExtraIds(int wanted) {
+
+            long accepted = 0;
+            for (int i = 0; i < acceptMin.length; i++) {
+                accepted += (long) acceptMax[i] - acceptMin[i] + 1;
+            }
+            for (int i = 0; i < rejectMin.length; i++) {
+                accepted -= (long) rejectMax[i] - rejectMin[i] + 1;
+            }
+
+            return accepted - wanted;
+        }
+    }
+
+    private FilterPlanner() {
+    }
+
+    public static Plan plan(int[] ids, int maxAccept, int maxReject) {
+
+        int[] sorted = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(sorted);
+
+        // runs of consecutive ids
+        int[] min = new int[sorted.length];
+        int[] max = new int[sorted.length];
+        int count = 0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            int id = sorted[i];
+            if (count > 0 && id <= max[count - 1] + 1 && !crossesStd(max[count - 1], id)) {
+                max[count - 1] = Math.max(max[count - 1], id);
+            } else {
+                min[count] = id;
+                max[count] = id;
+                count++;
+            }
+        }
+
+        if (count == 0 || maxAccept <= 0) {
+            return new Plan(new int[0], new int[0], new int[0], new int[0]);
+        }
+
+        // join ranges over the smallest gaps until they fit
+        boolean[] joined = new boolean[count];  // range i is joined with range i + 1
+        int ranges = count;
+
+        while (ranges > maxAccept) {
+            int best = -1;
+            long bestGap = Long.MAX_VALUE;
+            for (int i = 0; i < count - 1; i++) {
+                if (joined[i] || crossesStd(max[i], min[i + 1])) {
+                    continue;
+                }
+                long gap = (long) min[i + 1] - max[i] - 1;
+                if (gap < bestGap) {
+                    bestGap = gap;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;  // only the 11/29 bit boundary is left, can not do better
+            }
+            joined[best] = true;
+            ranges--;
+        }
+
+        int[] acceptMin = new int[ranges];
+        int[] acceptMax = new int[ranges];
+        for (int i = 0, r = 0; i < count; i++) {
+            if (i == 0 || !joined[i - 1]) {
+                acceptMin[r] = min[i];
+            }
+            if (!joined[i]) {
+                acceptMax[r++] = max[i];
+            }
+        }
+
+        // widest joined gaps go to reject filters
+        int gaps = 0;
+        for (int i = 0; i < count - 1; i++) {
+            if (joined[i]) {
+                gaps++;
+            }
+        }
+
+        int[] gapIndex = new int[gaps];
+        for (int i = 0, g = 0; i < count - 1; i++) {
+            if (joined[i]) {
+                gapIndex[g++] = i;
+            }
+        }
+
+        int rejects = Math.max(0, Math.min(maxReject, gaps));
+        int[] rejectMin = new int[rejects];
+        int[] rejectMax = new int[rejects];
+
+        for (int r = 0; r < rejects; r++) {
+            int widest = r;
+            for (int g = r + 1; g < gaps; g++) {
+                if (gapWidth(min, max, gapIndex[g]) > gapWidth(min, max, gapIndex[widest])) {
+                    widest = g;
+                }
+            }
+            int tmp = gapIndex[r];
+            gapIndex[r] = gapIndex[widest];
+            gapIndex[widest] = tmp;
+
+            rejectMin[r] = max[gapIndex[r]] + 1;
+            rejectMax[r] = min[gapIndex[r] + 1] - 1;
+        }
+
+        return new Plan(acceptMin, acceptMax, rejectMin, rejectMax);
+    }
+
+    private static long gapWidth(int[] min, int[] max, int i) {
+        return (long) min[i + 1] - max[i] - 1;
+    }
+
+    private static boolean crossesStd(int a, int b) {
+        return (a < IdMap.STD_ID_COUNT) != (b < IdMap.STD_ID_COUNT);
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+/* Decides which read command is sent to the firmware and when.
+ * C03 asks firmware to push frames continuously (streaming mode), firmware which can do it
+ * acknowledges with C03 record. Older firmware ignores it, when no acknowledge arrives within
+ * probe time link falls back to pipelined C02 requests: next request is sent on time without
+ * waiting for response to the previous one. Acknowledge arriving later still switches link to
+ * streaming. Bus traffic is not taken into account, so a quiet bus at connect does not matter.
+ * Protocol has no end of response marker, so number of requests in flight is bound by time.
+ * Pure java, the same logic drives ComLink and FirmwareBenchmark. */
+public final class FirmwareProtocol {
+
+    public final static String FWCMD_READ_INFO = "C01\r";  // not used for now
+    public final static String FWCMD_READ_FRAMES = "C02\r";
+    public final static String FWCMD_STREAM_FRAMES = "C03\r";
+
+    public final static int FWREPLY_STREAM_FRAMES = 0x03;  // see SlcanDecoder.takeReply()
+
+    private final static byte[] FWCMD_READ_FRAMES_BYTES = FWCMD_READ_FRAMES.getBytes();
+    private final static byte[] FWCMD_STREAM_FRAMES_BYTES = FWCMD_STREAM_FRAMES.getBytes();
+
+    public final static int MODE_IDLE = 0;
+    public final static int MODE_PROBING = 1;
+    public final static int MODE_STREAMING = 2;
+    public final static int MODE_PIPELINED = 3;
+
+    private final boolean mStreaming;
+    private final long mProbeTime;   // ns
+    private final long mPollPeriod;  // ns
+
+    private volatile int mMode = MODE_IDLE;
+    private long mProbeDeadline = 0;
+    private long mNextPoll = 0;
+
+    public FirmwareProtocol(boolean streaming, long probeTimeNs, long pollPeriodNs) {
+        mStreaming = streaming;
+        mProbeTime = probeTimeNs;
+        mPollPeriod = pollPeriodNs;
+    }
+
+    /* Returns command to be sent when link is up */
+    public byte[] start(long now) {
+
+        if (mStreaming) {
+            mMode = MODE_PROBING;
+            mProbeDeadline = now + mProbeTime;
+            return FWCMD_STREAM_FRAMES_BYTES;
+        }
+
+        pipelined(now);
+        return poll(now);
+    }
+
+    /* Returns command to be sent now or null, call at least once per poll period */
+    public byte[] poll(long now) {
+
+        switch (mMode) {
+            case MODE_PROBING:
+                if (now - mProbeDeadline < 0) {
+                    return null;
+                }
+                pipelined(now);
+                // fall through, first request goes immediately
+            case MODE_PIPELINED:
+                if (now - mNextPoll >= 0) {
+                    mNextPoll += mPollPeriod;
+                    if (now - mNextPoll >= 0) {
+                        mNextPoll = now + mPollPeriod;  // we are late, do not burst
+                    }
+                    return FWCMD_READ_FRAMES_BYTES;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /* Firmware replied to command, SlcanDecoder.NO_REPLY is ignored */
+    public void onReply(int command) {
+        if (command == FWREPLY_STREAM_FRAMES && mStreaming) {
+            mMode = MODE_STREAMING;
+        }
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public boolean isStreaming() {
+        return mMode == MODE_STREAMING;
+    }
+
+    private void pipelined(long now) {
+        mMode = MODE_PIPELINED;
+        mNextPoll = now;
+    }
+}
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Bounded single producer / single consumer queue of CAN frames.
+ * Frames are kept as primitives in preallocated arrays, so handing them over
+ * between threads does not allocate anything. What happens when the queue is full
+ * depends on its overflow policy:
+ *   OVERFLOW_DROP_NEWEST - offered frame is dropped
+ *   OVERFLOW_DROP_OLDEST - oldest queued frame is evicted, consumer throws away a copy
+ *                          of a frame evicted while it was copied
+ *   OVERFLOW_CONFLATE_PER_ID - queue holds at most one frame per id, a newer frame of an id
+ *                          overwrites the queued one in place and keeps its position, so
+ *                          consumer never replays stale frames of an id; the queue is full
+ *                          only when more distinct ids than its capacity are waiting
+ * Time every frame spent queued (from offer to the sink) is measured. */
+public final class FrameQueue {
+
+    public final static int OVERFLOW_DROP_NEWEST = 0;
+    public final static int OVERFLOW_DROP_OLDEST = 1;
+    public final static int OVERFLOW_CONFLATE_PER_ID = 2;
+
+    public final static int NO_FRAME = -1;
+
+    private final int mMask;
+    private final int mOverflowPolicy;
+
+    private final int[] mIds;
+    private final byte[] mLens;
+    private final long[] mData;
+    private final long[] mTimeStamps;
+    private final long[] mOfferTimes;  // System.nanoTime()
+
+    private final AtomicInteger mHead = new AtomicInteger(0);  // consumer, producer when evicting
+    private volatile int mTail = 0;  // written by producer only
+
+    /* OVERFLOW_CONFLATE_PER_ID: every id gets an entry holding its newest frame and the queue
+     * holds indexes of entries (in mIds). Entries are guarded by sequence counters as slots
+     * of SignalStore: odd while producer writes, consumer retries until it sees the same even
+     * counter before and after copying. Consumer clears the queued flag before copying, so a
+     * frame written meanwhile is either copied or queues the entry again, never lost */
+    private final IdMap<Integer> mEntryIndex;  // producer only
+    private final int[] mEntryIds;
+    private final AtomicIntegerArray mEntrySeq;
+    private final AtomicIntegerArray mEntryQueued;  // 1 while entry is in the queue
+    private final AtomicIntegerArray mEntryLens;
+    private final AtomicLongArray mEntryData;
+    private final AtomicLongArray mEntryTimeStamps;
+    private final AtomicLongArray mEntryOfferTimes;
+    private int mEntryCount = 0;  // producer only
+
+    private boolean mOverflowing = false;  // producer only
+
+    private volatile int mOffered = 0;
+    private volatile int mDropped = 0;
+    private volatile int mConflated = 0;
+    private volatile int mOverflows = 0;  // times queue got full
+    private volatile int mHighWatermark = 0;  // most frames queued at once
+
+    // consumer only
+    private volatile int mDelivered = 0;
+    private volatile long mLatencySum = 0;  // ns
+    private volatile long mLatencyMax = 0;
+
+    public interface FrameSink {
+        public void onFrame(int id, int len, long data, long timeStamp);
+    }
+
+    public FrameQueue(int capacity) {
+        this(capacity, OVERFLOW_DROP_NEWEST);
+    }
+
+    public FrameQueue(int capacity, int overflowPolicy) {
+
+        if (overflowPolicy < OVERFLOW_DROP_NEWEST || overflowPolicy > OVERFLOW_CONFLATE_PER_ID) {
+            throw new IllegalArgumentException("Invalid overflow policy " + overflowPolicy);
+        }
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mOverflowPolicy = overflowPolicy;
+        mIds = new int[size];
+        mLens = new byte[size];
+        mData = new long[size];
+        mTimeStamps = new long[size];
+        mOfferTimes = new long[size];
+
+        if (overflowPolicy == OVERFLOW_CONFLATE_PER_ID) {
+            mEntryIndex = new IdMap<Integer>();
+            mEntryIds = new int[size];
+            mEntrySeq = new AtomicIntegerArray(size);
+            mEntryQueued = new AtomicIntegerArray(size);
+            mEntryLens = new AtomicIntegerArray(size);
+            mEntryData = new AtomicLongArray(size);
+            mEntryTimeStamps = new AtomicLongArray(size);
+            mEntryOfferTimes = new AtomicLongArray(size);
+        } else {
+            mEntryIndex = null;
+            mEntryIds = null;
+            mEntrySeq = null;
+            mEntryQueued = null;
+            mEntryLens = null;
+            mEntryData = null;
+            mEntryTimeStamps = null;
+            mEntryOfferTimes = null;
+        }
+    }
+
+    /* Producer side. Returns id of the frame lost because queue was full: the offered one,
+     * or the evicted one with OVERFLOW_DROP_OLDEST; NO_FRAME when nothing was lost.
+     * Conflated frames are not lost, newer frame of the same id takes their place */
+    public int offer(int id, int len, long data, long timeStamp) {
+
+        long now = System.nanoTime();
+        mOffered++;
+
+        if (mOverflowPolicy == OVERFLOW_CONFLATE_PER_ID) {
+            return conflate(id, len, data, timeStamp, now);
+        }
+
+        if (put(id, len, data, timeStamp, now)) {
+            mOverflowing = false;
+            return NO_FRAME;
+        }
+        overflow();
+
+        if (mOverflowPolicy == OVERFLOW_DROP_NEWEST) {
+            mDropped++;
+            return id;
+        }
+
+        // evict the oldest frame, failed CAS means consumer has just taken it
+        int head = mHead.get();
+        int evicted = mIds[head & mMask];
+        if (mHead.compareAndSet(head, head + 1)) {
+            mDropped++;
+        } else {
+            evicted = NO_FRAME;
+        }
+        put(id, len, data, timeStamp, now);
+
+        return evicted;
+    }
+
+    // consumer side, returns number of frames passed to the sink
+    public int drain(FrameSink sink) {
+        return drain(sink, Integer.MAX_VALUE);
+    }
+
+    // consumer side, passes at most max frames
+    public int drain(FrameSink sink, int max) {
+
+        int count = 0;
+
+        while (count < max) {
+            int head = mHead.get();
+            if (head == mTail) {
+                break;
+            }
+
+            if (mEntryIds != null) {
+                if (mHead.compareAndSet(head, head + 1)) {
+                    deliverEntry(mIds[head & mMask], sink);
+                    count++;
+                }
+                continue;
+            }
+
+            int idx = head & mMask;
+            int id = mIds[idx];
+            int len = mLens[idx];
+            long data = mData[idx];
+            long timeStamp = mTimeStamps[idx];
+            long offered = mOfferTimes[idx];
+
+            if (mHead.compareAndSet(head, head + 1)) {
+                deliver(id, len, data, timeStamp, offered, sink);
+                count++;
+            }
+            // else evicted while copied, copy may be torn
+        }
+
+        return count;
+    }
+
+    // consumer side
+    public void clear() {
+
+        while (true) {
+            int head = mHead.get();
+            int tail = mTail;
+            if (mHead.compareAndSet(head, tail)) {
+                if (mEntryIds != null) {
+                    // entries are not evicted, head was not moved in between
+                    for (int i = head; i != tail; i++) {
+                        mEntryQueued.set(mIds[i & mMask], 0);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() == mTail;
+    }
+
+    public int size() {
+        return mTail - mHead.get();
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    public int getOffered() {
+        return mOffered;
+    }
+
+    public int getDropped() {
+        return mDropped;
+    }
+
+    public int getConflated() {
+        return mConflated;
+    }
+
+    public int getOverflows() {
+        return mOverflows;
+    }
+
+    public int getHighWatermark() {
+        return mHighWatermark;
+    }
+
+    /* Average time frames spent in the queue, in microseconds */
+    public long getAverageLatency() {
+        int delivered = mDelivered;
+        return delivered > 0 ? mLatencySum / delivered / 1000 : 0;
+    }
+
+    public long getMaxLatency() {
+        return mLatencyMax / 1000;
+    }
+
+    public String getStats() {
+        return "offered " + mOffered + ", dropped " + mDropped + ", conflated " + mConflated
+                + ", overflows " + mOverflows + ", max queued " + mHighWatermark + "/" + capacity()
+                + ", latency avg " + getAverageLatency() + "us max " + getMaxLatency() + "us";
+    }
+
+    // producer side, false when queue is full
+    private boolean put(int id, int len, long data, long timeStamp, long offered) {
+
+        int tail = mTail;
+        int size = tail - mHead.get();
+
+        if (size > mMask) {
+            return false;
+        }
+        if (size >= mHighWatermark) {
+            mHighWatermark = size + 1;
+        }
+        int idx = tail & mMask;
+        mIds[idx] = id;
+        mLens[idx] = (byte) len;
+        mData[idx] = data;
+        mTimeStamps[idx] = timeStamp;
+        mOfferTimes[idx] = offered;
+
+        mTail = tail + 1;  // publish
+        return true;
+    }
+
+    // consumer side
+    private void deliver(int id, int len, long data, long timeStamp, long offered, FrameSink sink) {
+
+        long latency = System.nanoTime() - offered;
+        mLatencySum += latency;
+        if (latency > mLatencyMax) {
+            mLatencyMax = latency;
+        }
+        mDelivered++;
+
+        sink.onFrame(id, len, data, timeStamp);
+    }
+
+    // consumer side, entry was taken from the queue
+    private void deliverEntry(int entry, FrameSink sink) {
+
+        mEntryQueued.set(entry, 0);
+
+        while (true) {
+            int seq = mEntrySeq.get(entry);
+            if ((seq & 1) != 0) {
+                Thread.yield();  // producer is writing the entry
+                continue;
+            }
+
+            int len = mEntryLens.get(entry);
+            long data = mEntryData.get(entry);
+            long timeStamp = mEntryTimeStamps.get(entry);
+            long offered = mEntryOfferTimes.get(entry);
+
+            if (mEntrySeq.get(entry) == seq) {
+                deliver(mEntryIds[entry], len, data, timeStamp, offered, sink);
+                return;
+            }
+        }
+    }
+
+    // producer side, OVERFLOW_CONFLATE_PER_ID
+    private int conflate(int id, int len, long data, long timeStamp, long offered) {
+
+        Integer index = mEntryIndex.get(id);
+        int entry;
+
+        if (index != null) {
+            entry = index;
+        } else if (mEntryCount < mEntryIds.length) {
+            entry = mEntryCount++;
+            mEntryIds[entry] = id;
+            mEntryIndex.put(id, entry);
+        } else {
+            overflow();
+            mDropped++;  // more distinct ids than queue capacity
+            return id;
+        }
+
+        int seq = mEntrySeq.get(entry);
+        mEntrySeq.set(entry, seq + 1);
+        mEntryLens.set(entry, len);
+        mEntryData.set(entry, data);
+        mEntryTimeStamps.set(entry, timeStamp);
+        mEntryOfferTimes.set(entry, offered);
+        mEntrySeq.set(entry, seq + 2);
+
+        if (mEntryQueued.compareAndSet(entry, 0, 1)) {
+            // every entry is queued at most once, so there is always space for it
+            put(entry, 0, 0, 0, 0);
+        } else {
+            mConflated++;  // queued frame of the id overwritten
+        }
+        mOverflowing = false;
+
+        return NO_FRAME;
+    }
+
+    private void overflow() {
+        if (!mOverflowing) {
+            mOverflowing = true;
+            mOverflows++;
+        }
+    }
+}
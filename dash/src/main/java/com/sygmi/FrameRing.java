@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/* Lock free single producer / single consumer ring of preallocated CAN frames.
+ * Producer fills a claimed slot in place and publishes it, consumer copies it out.
+ * When the ring is full either the newest frame is dropped (FrameQueue.OVERFLOW_DROP_NEWEST)
+ * or the oldest one is evicted (FrameQueue.OVERFLOW_DROP_OLDEST), so the producer (usually
+ * an I/O thread) never blocks. Head is advanced with CAS, a copy of a slot the producer
+ * evicted meanwhile is thrown away. Raw frames are not conflated, see FrameQueue. */
+public final class FrameRing {
+
+    private final CanDriver.CanFrame[] mSlots;
+    private final int mMask;
+
+    private final AtomicInteger mHead = new AtomicInteger(0);  // consumer, producer when evicting
+    private volatile int mTail = 0;  // written by producer only
+
+    private volatile int mOverflowPolicy = FrameQueue.OVERFLOW_DROP_NEWEST;
+    private boolean mOverflowing = false;  // producer only
+
+    private volatile Thread mWaiter = null;
+    private volatile CanDriver.FrameListener mListener = null;
+    private volatile boolean mClosed = false;
+
+    private volatile int mDropped = 0;
+    private volatile int mOverflows = 0;  // times ring got full
+
+    public FrameRing(int capacity) {
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mSlots = new CanDriver.CanFrame[size];
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new CanDriver.CanFrame();
+        }
+    }
+
+    /* OVERFLOW_DROP_NEWEST or OVERFLOW_DROP_OLDEST, can be changed at any time */
+    public void setOverflowPolicy(int policy) {
+
+        if (policy != FrameQueue.OVERFLOW_DROP_NEWEST && policy != FrameQueue.OVERFLOW_DROP_OLDEST) {
+            throw new IllegalArgumentException("Overflow policy not supported by ring " + policy);
+        }
+        mOverflowPolicy = policy;
+    }
+
+    /* Producer side: returns slot to be filled or null when ring is full and newest frames
+     * are dropped. Slot becomes visible to consumer after publish() or commit() */
+    public CanDriver.CanFrame claim() {
+
+        int tail = mTail;
+        int head = mHead.get();
+
+        if (tail - head <= mMask) {
+            mOverflowing = false;
+            return mSlots[tail & mMask];
+        }
+
+        if (!mOverflowing) {
+            mOverflowing = true;
+            mOverflows++;
+        }
+
+        if (mOverflowPolicy == FrameQueue.OVERFLOW_DROP_NEWEST) {
+            mDropped++;
+            return null;
+        }
+
+        // evict the oldest frame, failed CAS means consumer has just taken it
+        if (mHead.compareAndSet(head, head + 1)) {
+            mDropped++;
+        }
+
+        return mSlots[tail & mMask];
+    }
+
+    public void publish() {
+        commit();
+        signal();
+    }
+
+    /* Makes claimed slot visible without waking anybody, used when many frames
+     * are produced at once and signal() is called after the last one */
+    public void commit() {
+        mTail = mTail + 1;
+    }
+
+    public void signal() {
+
+        Thread waiter = mWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+
+        CanDriver.FrameListener listener = mListener;
+        if (listener != null) {
+            listener.onFramesAvailable();
+        }
+    }
+
+    public void setListener(CanDriver.FrameListener listener) {
+        mListener = listener;
+    }
+
+    /* Consumer side: non blocking */
+    public boolean poll(CanDriver.CanFrame frame) {
+
+        while (true) {
+            int head = mHead.get();
+            if (head == mTail) {
+                return false;
+            }
+
+            frame.clone(mSlots[head & mMask]);
+            if (mHead.compareAndSet(head, head + 1)) {  // release slot
+                return true;
+            }
+            // evicted while copied, copy may be torn
+        }
+    }
+
+    /* Consumer side: non blocking, moves everything available (up to batch capacity) into the batch */
+    public int drainTo(CanDriver.FrameBatch batch) {
+
+        int count = 0;
+
+        while (!batch.isFull()) {
+            int head = mHead.get();
+            if (head == mTail) {
+                break;
+            }
+
+            batch.add(mSlots[head & mMask]);
+            if (mHead.compareAndSet(head, head + 1)) {  // release slot
+                count++;
+            } else {
+                batch.count--;  // evicted while copied
+            }
+        }
+
+        return count;
+    }
+
+    /* Consumer side: drops everything queued, returns number of frames dropped */
+    public int clear() {
+
+        while (true) {
+            int head = mHead.get();
+            int tail = mTail;
+            if (mHead.compareAndSet(head, tail)) {
+                return tail - head;
+            }
+        }
+    }
+
+    /* Consumer side: blocks until frame is available, ring is closed or thread is interrupted */
+    public boolean take(CanDriver.CanFrame frame) {
+
+        while (true) {
+            if (poll(frame)) {
+                return true;
+            }
+
+            if (mClosed || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+
+            mWaiter = Thread.currentThread();
+            if (isEmpty() && !mClosed) {
+                LockSupport.park(this);
+            }
+            mWaiter = null;
+        }
+    }
+
+    public void close() {
+
+        mClosed = true;
+
+        Thread waiter = mWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() == mTail;
+    }
+
+    public int size() {
+        return mTail - mHead.get();
+    }
+
+    public int getDropped() {
+        return mDropped;
+    }
+
+    public int getOverflows() {
+        return mOverflows;
+    }
+}
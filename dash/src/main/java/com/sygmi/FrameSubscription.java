@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* One consumer of frames published by ControllerService, see ControllerService.subscribe().
+ * Every subscription has its own id filter, queue and delivery thread, so a slow subscriber
+ * only loses its own frames. Frames are queued by the service thread and drained on
+ * the looper given, or on the service decode thread when there is none, at most maxRate
+ * times per second. Frames arriving in between are delivered together with the next batch;
+ * what happens when they do not fit is up to the queue's overflow policy, see FrameQueue.
+ * Rate limited subscribers usually want OVERFLOW_CONFLATE_PER_ID.
+ * There is one queue per priority class (SignalDatabase.PRIORITY_*), ids are normal priority
+ * unless set otherwise. Higher class is always delivered first, a lower class frame is passed
+ * only when all higher queues are empty, so a burst of comfort frames does not delay alarms.
+ * Frames repeating the previous payload of their id are dropped by default, subscribers which
+ * need every frame (eg. a recorder) turn that off with setDropUnchanged(false). */
+public final class FrameSubscription {
+
+    public final static int RATE_UNLIMITED = 0;
+
+    public final static int DEFAULT_QUEUE_SIZE = 256;
+
+    private final FrameQueue.FrameSink mSink;
+    private final IdFilter mIds;  // null - every id service receives
+    private final Looper mLooper;
+    private final FrameQueue[] mFrames = new FrameQueue[SignalDatabase.PRIORITY_COUNT];
+    private final IdMap<Integer> mPriorities = new IdMap<Integer>();
+    private PayloadFilter mPayloads = new PayloadFilter();  // null - every frame is passed
+
+    private Handler mHandler = null;
+    private volatile boolean mActive = false;
+    private final AtomicBoolean mDrainPending = new AtomicBoolean(false);
+
+    private volatile int mPeriod = 0;  // ms between deliveries
+    private volatile long mLastDelivery = 0;  // uptime ms
+    private volatile int mDeliveries = 0;
+
+    /* Applied in service thread, before frames are queued */
+    private volatile ControllerService.IFrameFilter mFilter = null;
+
+    public FrameSubscription(FrameQueue.FrameSink sink, int[] ids, Looper looper, int maxRate) {
+        this(sink, ids, looper, maxRate, DEFAULT_QUEUE_SIZE, FrameQueue.OVERFLOW_DROP_NEWEST);
+    }
+
+    public FrameSubscription(FrameQueue.FrameSink sink, int[] ids, Looper looper, int maxRate,
+                             int queueSize, int overflowPolicy) {
+
+        mSink = sink;
+        mIds = ids != null ? new IdFilter(ids) : null;
+        mLooper = looper;
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = new FrameQueue(queueSize, overflowPolicy);
+        }
+        setMaxRate(maxRate);
+    }
+
+    /* Has to be set before subscribing */
+    public void setPriority(int id, int priority) {
+
+        if (priority < 0 || priority >= SignalDatabase.PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Invalid priority " + priority);
+        }
+        mPriorities.put(id, priority == SignalDatabase.PRIORITY_NORMAL ? null : priority);
+    }
+
+    /* Has to be set before subscribing */
+    public void setDropUnchanged(boolean drop) {
+        mPayloads = drop ? new PayloadFilter() : null;
+    }
+
+    public void setPriorities(SignalDatabase signals) {
+        for (SignalDatabase.Message message : signals.getMessages()) {
+            setPriority(message.id, message.priority);
+        }
+    }
+
+    public void setMaxRate(int maxRate) {
+        mPeriod = maxRate > 0 ? 1000 / maxRate : 0;
+    }
+
+    public void setFrameFilter(ControllerService.IFrameFilter filter) {
+        mFilter = filter;
+    }
+
+    public boolean isActive() {
+        return mActive;
+    }
+
+    public String getStats() {
+
+        StringBuilder stats = new StringBuilder("deliveries " + mDeliveries);
+        if (mPayloads != null) {
+            stats.append(", unchanged dropped ").append(mPayloads.getSuppressed());
+        }
+        for (int i = 0; i < mFrames.length; i++) {
+            stats.append("; priority ").append(i).append(": ").append(mFrames[i].getStats());
+        }
+
+        return stats.toString();
+    }
+
+    public FrameQueue getQueue(int priority) {
+        return mFrames[priority];
+    }
+
+    // ControllerService, default looper is used when subscriber did not give any
+    void attach(Looper defaultLooper) {
+        mHandler = new Handler(mLooper != null ? mLooper : defaultLooper);
+        mActive = true;
+    }
+
+    void detach() {
+        mActive = false;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mDrainTask);
+        }
+    }
+
+    /* Service thread. Returns id of the frame lost because queue was full,
+     * FrameQueue.NO_FRAME when nothing was lost */
+    int offer(int id, boolean extended, int len, long data, long timeStamp) {
+
+        if (mIds != null && !mIds.accept(id, extended)) {
+            return FrameQueue.NO_FRAME;
+        }
+
+        if (mPayloads != null && !mPayloads.changed(id, len, data)) {
+            return FrameQueue.NO_FRAME;
+        }
+
+        ControllerService.IFrameFilter filter = mFilter;
+        if (filter != null && !filter.accept(id, len, data)) {
+            return FrameQueue.NO_FRAME;
+        }
+
+        FrameQueue queue = mFrames[SignalDatabase.PRIORITY_NORMAL];
+        if (mPriorities.size() > 0) {
+            Integer priority = mPriorities.get(id);
+            if (priority != null) {
+                queue = mFrames[priority];
+            }
+        }
+
+        int lost = queue.offer(id, len, data, timeStamp);
+        if (lost != FrameQueue.NO_FRAME) {
+            // let the next frame of id pass, so the change lost is delivered
+            if (mPayloads != null) {
+                mPayloads.forget(lost);
+            }
+            if (filter != null) {
+                filter.forget(lost);
+            }
+        }
+
+        return lost;
+    }
+
+    /* Service thread, after a batch was offered. Wakes up the subscriber only when it has
+     * drained previous frames and not sooner than its rate allows */
+    void schedule() {
+
+        boolean empty = true;
+
+        for (FrameQueue queue : mFrames) {
+            empty &= queue.isEmpty();
+        }
+
+        if (!empty && mDrainPending.compareAndSet(false, true)) {
+            int period = mPeriod;
+            if (period == 0) {
+                mHandler.post(mDrainTask);
+            } else {
+                long delay = mLastDelivery + period - SystemClock.uptimeMillis();
+                mHandler.postDelayed(mDrainTask, Math.max(0, delay));
+            }
+        }
+    }
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            // one message per batch of frames, not per frame
+            mDrainPending.set(false);
+            mLastDelivery = SystemClock.uptimeMillis();
+            if (mActive) {
+                // one frame at a time, higher priority queues are checked again after each
+                int priority = 0;
+                while (priority < mFrames.length) {
+                    priority = mFrames[priority].drain(mSink, 1) > 0 ? 0 : priority + 1;
+                }
+                mDeliveries++;
+            } else {
+                for (FrameQueue queue : mFrames) {
+                    queue.clear();
+                }
+            }
+        }
+    };
+}
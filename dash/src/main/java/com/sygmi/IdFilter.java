@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+/* Exact software acceptance filter for frames hardware let through, see FilterPlanner.
+ * Standard frames are checked in a 2048 bit bitmap, extended ones in an open addressing
+ * set of all ids. Id list does not tell the frame format, so an id below 0x800 matches
+ * frames of both formats: 29 bit ids may be as low as any 11 bit one (eg. S00000123N...).
+ * Lookups are O(1) and do not allocate. Immutable after construction, only the rejected
+ * counter changes. */
+public final class IdFilter {
+
+    private final static int EMPTY = -1;
+
+    private final long[] mStd = new long[IdMap.STD_ID_COUNT / 64];
+    private final int[] mExt;
+
+    private int mRejected = 0;
+
+    public IdFilter(int[] ids) {
+
+        int capacity = 4;
+        while (capacity < ids.length * 2) {
+            capacity <<= 1;
+        }
+        mExt = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mExt[i] = EMPTY;
+        }
+
+        for (int id : ids) {
+            if (id < 0) {
+                continue;
+            }
+            if (id < IdMap.STD_ID_COUNT) {
+                mStd[id >>> 6] |= 1L << id;
+            }
+            mExt[slot(id)] = id;
+        }
+    }
+
+    public boolean accept(int id, boolean extended) {
+
+        boolean accepted;
+
+        if (!extended) {
+            accepted = id >= 0 && id < IdMap.STD_ID_COUNT && (mStd[id >>> 6] & (1L << id)) != 0;
+        } else {
+            accepted = id >= 0 && mExt[slot(id)] == id;
+        }
+
+        if (!accepted) {
+            mRejected++;
+        }
+
+        return accepted;
+    }
+
+    /* Frames hardware should have filtered out but did not */
+    public int getRejected() {
+        return mRejected;
+    }
+
+    // slot holding the id or the empty one where probing stopped
+    private int slot(int id) {
+
+        int mask = mExt.length - 1;
+        int h = id * 0x9E3779B9;
+
+        int i = (h ^ (h >>> 16)) & mask;
+        while (mExt[i] != EMPTY && mExt[i] != id) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+/* Map keyed by CAN id, lookups do not allocate.
+ * 11 bit ids index a dense array directly, 29 bit ids go to open addressing table
+ * with linear probing. Not thread safe. */
+public final class IdMap<V> {
+
+    public final static int STD_ID_COUNT = 0x800;
+
+    private final static int EMPTY = -1;  // ids are never negative
+    private final static int MIN_EXT_CAPACITY = 16;
+
+    private final Object[] mDense = new Object[STD_ID_COUNT];
+    private int mDenseSize = 0;
+
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mExtSize = 0;
+
+    public IdMap() {
+        allocate(MIN_EXT_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+
+        if (id >= 0 && id < STD_ID_COUNT) {
+            return (V) mDense[id];
+        }
+
+        int mask = mKeys.length - 1;
+        for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+            int key = mKeys[i];
+            if (key == id) {
+                return (V) mValues[i];
+            }
+            if (key == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /* Returns previous value, null value removes mapping */
+    @SuppressWarnings("unchecked")
+    public V put(int id, V value) {
+
+        if (value == null) {
+            return remove(id);
+        }
+
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid id " + id);
+        }
+
+        if (id < STD_ID_COUNT) {
+            V old = (V) mDense[id];
+            if (old == null) {
+                mDenseSize++;
+            }
+            mDense[id] = value;
+            return old;
+        }
+
+        int mask = mKeys.length - 1;
+        int i = hash(id) & mask;
+        while (mKeys[i] != EMPTY) {
+            if (mKeys[i] == id) {
+                V old = (V) mValues[i];
+                mValues[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        mKeys[i] = id;
+        mValues[i] = value;
+        if (++mExtSize * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int id) {
+
+        if (id < 0) {
+            return null;
+        }
+
+        if (id < STD_ID_COUNT) {
+            V old = (V) mDense[id];
+            if (old != null) {
+                mDenseSize--;
+            }
+            mDense[id] = null;
+            return old;
+        }
+
+        int mask = mKeys.length - 1;
+        int i = hash(id) & mask;
+        while (mKeys[i] != id) {
+            if (mKeys[i] == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+
+        V old = (V) mValues[i];
+
+        // shift following entries back so probe chains stay unbroken
+        int gap = i;
+        for (int j = (i + 1) & mask; mKeys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(mKeys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                mKeys[gap] = mKeys[j];
+                mValues[gap] = mValues[j];
+                gap = j;
+            }
+        }
+        mKeys[gap] = EMPTY;
+        mValues[gap] = null;
+        mExtSize--;
+
+        return old;
+    }
+
+    public int size() {
+        return mDenseSize + mExtSize;
+    }
+
+    public void clear() {
+
+        for (int i = 0; i < STD_ID_COUNT; i++) {
+            mDense[i] = null;
+        }
+        mDenseSize = 0;
+
+        allocate(MIN_EXT_CAPACITY);
+        mExtSize = 0;
+    }
+
+    private void allocate(int capacity) {
+
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mKeys[i] = EMPTY;
+        }
+    }
+
+    private void rehash(int capacity) {
+
+        int[] keys = mKeys;
+        Object[] values = mValues;
+
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] == EMPTY) {
+                continue;
+            }
+            int i = hash(keys[j]) & mask;
+            while (mKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = keys[j];
+            mValues[i] = values[j];
+        }
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/* Non blocking TCP transport, one selector thread serves all endpoints (eg. one device per bus segment).
+ * Reads go to direct buffers, writes are coalesced per endpoint and flushed once per loop.
+ * Every endpoint can have a periodic tick, run on the same thread.
+ * Pure java, no android dependencies. */
+public final class NioTransport implements Runnable {
+
+    private final static int READ_BUFFER_SIZE = 4096;
+    private final static int WRITE_BUFFER_SIZE = 1024;
+
+    private static NioTransport sInstance = null;
+    private static int sUsers = 0;
+
+    private final Selector mSelector;
+    private final Thread mThread;
+
+    private volatile boolean mRunning = true;
+
+    private final ConcurrentLinkedQueue<Endpoint> mToRegister = new ConcurrentLinkedQueue<Endpoint>();
+    private final ConcurrentLinkedQueue<Endpoint> mToClose = new ConcurrentLinkedQueue<Endpoint>();
+    private final ArrayList<Endpoint> mEndpoints = new ArrayList<Endpoint>();  // selector thread only
+
+    public interface EndpointListener {
+        public void onConnected(Endpoint endpoint);
+        public void onData(Endpoint endpoint, ByteBuffer data);
+        public void onTick(Endpoint endpoint);
+        public void onClosed(Endpoint endpoint, IOException e);
+    }
+
+    /* Shared instance, started with first user and stopped with the last one */
+    public static synchronized NioTransport acquire() throws IOException {
+
+        if (sInstance == null) {
+            sInstance = new NioTransport();
+        }
+        sUsers++;
+
+        return sInstance;
+    }
+
+    public static synchronized void release(NioTransport transport) {
+
+        if (transport == null || transport != sInstance) {
+            return;
+        }
+
+        if (--sUsers == 0) {
+            sInstance.shutdown();
+            sInstance = null;
+        }
+    }
+
+    private NioTransport() throws IOException {
+
+        mSelector = Selector.open();
+        mThread = new Thread(this, "NioTransport");
+        mThread.start();
+    }
+
+    private void shutdown() {
+
+        mRunning = false;
+        mSelector.wakeup();
+
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Starts non blocking connect, use Endpoint.awaitConnected() to wait for result */
+    public Endpoint open(InetSocketAddress address, EndpointListener listener, int tickPeriodMs) throws IOException {
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        Endpoint endpoint = new Endpoint(channel, listener, tickPeriodMs);
+        mToRegister.add(endpoint);
+        mSelector.wakeup();
+
+        return endpoint;
+    }
+
+    public final class Endpoint {
+
+        private final SocketChannel mChannel;
+        private final EndpointListener mListener;
+        private final ByteBuffer mIn = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final ByteBuffer mOut = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);  // guarded by itself
+        private final CountDownLatch mConnectLatch = new CountDownLatch(1);
+        private final long mTickPeriod;  // ns
+
+        private SelectionKey mKey = null;
+        private long mNextTick = 0;
+
+        private volatile boolean mConnected = false;
+        private volatile boolean mOpen = true;
+
+        private Endpoint(SocketChannel channel, EndpointListener listener, int tickPeriodMs) {
+            mChannel = channel;
+            mListener = listener;
+            mTickPeriod = TimeUnit.MILLISECONDS.toNanos(tickPeriodMs);
+        }
+
+        public boolean awaitConnected(int timeoutMs) {
+
+            try {
+                mConnectLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return mConnected && mOpen;
+        }
+
+        public boolean isOpen() {
+            return mOpen;
+        }
+
+        /* Can be called from any thread, bytes are queued and written together
+         * with other pending data by the selector thread */
+        public boolean write(byte[] data) {
+
+            synchronized (mOut) {
+                if (mOut.remaining() < data.length) {
+                    return false;
+                }
+                mOut.put(data);
+            }
+
+            if (Thread.currentThread() != mThread) {
+                mSelector.wakeup();
+            }
+
+            return true;
+        }
+
+        public void close() {
+
+            if (mOpen) {
+                mOpen = false;
+                mToClose.add(this);
+                mSelector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (mRunning) {
+
+            registerPending();
+            long timeout = runTicks(System.nanoTime());
+            flushAll();
+
+            try {
+                mSelector.select(timeout);
+            } catch (IOException e) {
+                break;
+            }
+
+            Iterator<SelectionKey> it = mSelector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+
+                Endpoint endpoint = (Endpoint) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable()) {
+                        if (endpoint.mChannel.finishConnect()) {
+                            connected(endpoint);
+                        }
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(endpoint);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(endpoint);
+                    }
+                } catch (IOException e) {
+                    close(endpoint, e);
+                }
+            }
+        }
+
+        while (!mEndpoints.isEmpty()) {
+            close(mEndpoints.get(0), null);
+        }
+        for (Endpoint endpoint : mToRegister) {
+            close(endpoint, null);
+        }
+
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private void registerPending() {
+
+        Endpoint endpoint;
+
+        while ((endpoint = mToClose.poll()) != null) {
+            close(endpoint, null);
+        }
+
+        while ((endpoint = mToRegister.poll()) != null) {
+            if (!endpoint.mOpen) {
+                close(endpoint, null);
+                continue;
+            }
+            try {
+                if (endpoint.mChannel.isConnectionPending()) {
+                    endpoint.mKey = endpoint.mChannel.register(mSelector, SelectionKey.OP_CONNECT, endpoint);
+                    mEndpoints.add(endpoint);
+                } else {
+                    endpoint.mKey = endpoint.mChannel.register(mSelector, SelectionKey.OP_READ, endpoint);
+                    mEndpoints.add(endpoint);
+                    connected(endpoint);
+                }
+            } catch (IOException e) {
+                close(endpoint, e);
+            }
+        }
+    }
+
+    private void connected(Endpoint endpoint) {
+
+        endpoint.mKey.interestOps(SelectionKey.OP_READ);
+        endpoint.mConnected = true;
+        endpoint.mNextTick = System.nanoTime();
+        endpoint.mConnectLatch.countDown();
+        endpoint.mListener.onConnected(endpoint);
+    }
+
+    // returns time in ms to the next tick, 0 means no ticks are scheduled
+    private long runTicks(long now) {
+
+        long nearest = Long.MAX_VALUE;
+
+        for (int i = 0; i < mEndpoints.size(); i++) {
+            Endpoint endpoint = mEndpoints.get(i);
+            if (!endpoint.mConnected || endpoint.mTickPeriod <= 0) {
+                continue;
+            }
+
+            if (now - endpoint.mNextTick >= 0) {
+                endpoint.mListener.onTick(endpoint);
+                endpoint.mNextTick += endpoint.mTickPeriod;
+                if (now - endpoint.mNextTick >= 0) {
+                    endpoint.mNextTick = now + endpoint.mTickPeriod;  // we are late, do not burst
+                }
+            }
+
+            long delay = endpoint.mNextTick - now;
+            if (delay < nearest) {
+                nearest = delay;
+            }
+        }
+
+        if (nearest == Long.MAX_VALUE) {
+            return 0;
+        }
+
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nearest));
+    }
+
+    private void read(Endpoint endpoint) throws IOException {
+
+        ByteBuffer in = endpoint.mIn;
+        in.clear();
+
+        int count = endpoint.mChannel.read(in);
+        if (count < 0) {
+            throw new IOException("Connection closed by peer");
+        }
+
+        if (count > 0) {
+            in.flip();
+            endpoint.mListener.onData(endpoint, in);
+        }
+    }
+
+    private void flushAll() {
+
+        for (int i = 0; i < mEndpoints.size(); i++) {
+            Endpoint endpoint = mEndpoints.get(i);
+            if (!endpoint.mConnected) {
+                continue;
+            }
+            try {
+                flush(endpoint);
+            } catch (IOException e) {
+                close(endpoint, e);
+                i--;
+            }
+        }
+    }
+
+    private void flush(Endpoint endpoint) throws IOException {
+
+        boolean pending;
+
+        synchronized (endpoint.mOut) {
+            ByteBuffer out = endpoint.mOut;
+            if (out.position() == 0) {
+                pending = false;
+            } else {
+                out.flip();
+                endpoint.mChannel.write(out);
+                out.compact();
+                pending = out.position() > 0;
+            }
+        }
+
+        // wait for socket buffer space only when something is left
+        int ops = SelectionKey.OP_READ | (pending ? SelectionKey.OP_WRITE : 0);
+        if (endpoint.mKey.interestOps() != ops) {
+            endpoint.mKey.interestOps(ops);
+        }
+    }
+
+    private void close(Endpoint endpoint, IOException e) {
+
+        mEndpoints.remove(endpoint);
+
+        if (endpoint.mKey != null) {
+            endpoint.mKey.cancel();
+        }
+        try {
+            endpoint.mChannel.close();
+        } catch (IOException ignored) {
+        }
+
+        boolean wasOpen = endpoint.mOpen;
+        endpoint.mOpen = false;
+        endpoint.mConnected = false;
+        endpoint.mConnectLatch.countDown();
+
+        if (e != null && wasOpen) {
+            endpoint.mListener.onClosed(endpoint, e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+/* Last payload seen per CAN id, used to drop frames that repeat unchanged.
+ * 11 bit ids are kept in dense arrays, 29 bit ids in fixed size open addressing table,
+ * when that one is full new ids are simply passed through. Nothing is allocated per frame.
+ * Not thread safe, meant for the ingest thread. */
+public final class PayloadFilter {
+
+    private final static int EXT_CAPACITY = 256;  // power of 2
+    private final static int EXT_LIMIT = EXT_CAPACITY / 2;
+    private final static int EMPTY = -1;
+
+    private final static byte UNSEEN = -1;
+
+    private final long[] mData = new long[IdMap.STD_ID_COUNT];
+    private final byte[] mLens = new byte[IdMap.STD_ID_COUNT];
+
+    private final int[] mExtIds = new int[EXT_CAPACITY];
+    private final long[] mExtData = new long[EXT_CAPACITY];
+    private final byte[] mExtLens = new byte[EXT_CAPACITY];
+    private int mExtSize = 0;
+
+    private int mSuppressed = 0;
+
+    public PayloadFilter() {
+        reset();
+    }
+
+    /* Returns true when payload differs from the last one of the id, and remembers it */
+    public boolean changed(int id, int len, long data) {
+
+        if (id >= 0 && id < IdMap.STD_ID_COUNT) {
+            if (mLens[id] == len && mData[id] == data) {
+                mSuppressed++;
+                return false;
+            }
+            mLens[id] = (byte) len;
+            mData[id] = data;
+            return true;
+        }
+
+        int i = slot(id);
+        if (i < 0) {
+            return true;  // table full, do not filter
+        }
+
+        if (mExtIds[i] == id && mExtLens[i] == len && mExtData[i] == data) {
+            mSuppressed++;
+            return false;
+        }
+
+        if (mExtIds[i] == EMPTY) {
+            mExtIds[i] = id;
+            mExtSize++;
+        }
+        mExtLens[i] = (byte) len;
+        mExtData[i] = data;
+
+        return true;
+    }
+
+    /* Next frame of the id passes whatever its payload is, eg. when previous one was dropped */
+    public void forget(int id) {
+
+        if (id >= 0 && id < IdMap.STD_ID_COUNT) {
+            mLens[id] = UNSEEN;
+            return;
+        }
+
+        int i = slot(id);
+        if (i >= 0 && mExtIds[i] == id) {
+            mExtLens[i] = UNSEEN;
+        }
+    }
+
+    public void reset() {
+
+        for (int i = 0; i < mLens.length; i++) {
+            mLens[i] = UNSEEN;
+        }
+        for (int i = 0; i < EXT_CAPACITY; i++) {
+            mExtIds[i] = EMPTY;
+        }
+        mExtSize = 0;
+    }
+
+    /* Number of frames dropped as duplicates */
+    public int getSuppressed() {
+        return mSuppressed;
+    }
+
+    // slot holding the id or free slot for it, -1 when id is not there and no more ids fit
+    private int slot(int id) {
+
+        int mask = EXT_CAPACITY - 1;
+        int h = id * 0x9E3779B9;
+
+        for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            if (mExtIds[i] == id) {
+                return i;
+            }
+            if (mExtIds[i] == EMPTY) {
+                return mExtSize < EXT_LIMIT ? i : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/* DBC like definition of CAN messages and their signals, one definition per line:
+ *   BO <id hex> <message name> <dlc> [high|normal|low]
+ *   SG <signal name> <start bit> <length> <intel|motorola> <signed|unsigned> <factor> <offset> <min> <max> [deadband]
+ * Signals belong to the preceding BO line, '#' starts a comment.
+ * Bits are numbered as in DBC: bit n is bit (n % 8) of byte (n / 8). Start bit of intel
+ * (little endian) signal is its least significant bit, of motorola (big endian) one its most significant bit.
+ * Physical value = raw * factor + offset, values outside of <min, max> are ignored.
+ * Changes smaller than optional deadband (physical units) are not reported, see SignalFilter.
+ * Optional priority class of message (normal by default) decides which frames are dispatched
+ * first under load, eg. park distance before comfort signals, see FrameSubscription.
+ * Pure java, see SignalDecoder for extraction. */
+public final class SignalDatabase {
+
+    public final static int PRIORITY_HIGH = 0;
+    public final static int PRIORITY_NORMAL = 1;
+    public final static int PRIORITY_LOW = 2;
+    public final static int PRIORITY_COUNT = 3;
+
+    public final static class Signal {
+
+        public final String name;
+        public final int startBit;
+        public final int length;
+        public final boolean littleEndian;
+        public final boolean signed;
+        public final double factor;
+        public final double offset;
+        public final double min;
+        public final double max;
+        public final double deadband;
+
+        Signal(String name, int startBit, int length, boolean littleEndian, boolean signed,
+               double factor, double offset, double min, double max, double deadband) {
+            this.name = name;
+            this.startBit = startBit;
+            this.length = length;
+            this.littleEndian = littleEndian;
+            this.signed = signed;
+            this.factor = factor;
+            this.offset = offset;
+            this.min = min;
+            this.max = max;
+            this.deadband = deadband;
+        }
+    }
+
+    public final static class Message {
+
+        public final int id;
+        public final String name;
+        public final int dlc;
+        public final int priority;
+
+        private final ArrayList<Signal> mSignals = new ArrayList<Signal>();
+
+        Message(int id, String name, int dlc, int priority) {
+            this.id = id;
+            this.name = name;
+            this.dlc = dlc;
+            this.priority = priority;
+        }
+
+        public List<Signal> getSignals() {
+            return Collections.unmodifiableList(mSignals);
+        }
+    }
+
+    private final ArrayList<Message> mMessages = new ArrayList<Message>();
+
+    private SignalDatabase() {
+    }
+
+    public static SignalDatabase load(InputStream input) throws IOException {
+
+        SignalDatabase db = new SignalDatabase();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "US-ASCII"));
+
+        Message message = null;
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+
+            try {
+                if (fields[0].equals("BO") && (fields.length == 4 || fields.length == 5)) {
+                    message = parseMessage(fields);
+                    if (db.getMessage(message.id) != null) {
+                        throw new IllegalArgumentException("duplicated id " + fields[1]);
+                    }
+                    db.mMessages.add(message);
+                } else if (fields[0].equals("SG") && (fields.length == 10 || fields.length == 11)) {
+                    if (message == null) {
+                        throw new IllegalArgumentException("signal without message");
+                    }
+                    message.mSignals.add(parseSignal(fields, message.dlc));
+                } else {
+                    throw new IllegalArgumentException("unknown definition");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Signal database line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        return db;
+    }
+
+    private static Message parseMessage(String[] fields) {
+
+        int id = Integer.parseInt(fields[1], 16);
+        int dlc = Integer.parseInt(fields[3]);
+
+        if (id < 0 || id > 0x1FFFFFFF) {
+            throw new IllegalArgumentException("invalid id " + fields[1]);
+        }
+        if (dlc < 0 || dlc > CanDriver.CanFrame.MAX_DATA_SIZE) {
+            throw new IllegalArgumentException("invalid dlc " + dlc);
+        }
+
+        int priority = PRIORITY_NORMAL;
+        if (fields.length > 4) {
+            if (fields[4].equals("high")) {
+                priority = PRIORITY_HIGH;
+            } else if (fields[4].equals("low")) {
+                priority = PRIORITY_LOW;
+            } else if (!fields[4].equals("normal")) {
+                throw new IllegalArgumentException("invalid priority " + fields[4]);
+            }
+        }
+
+        return new Message(id, fields[2], dlc, priority);
+    }
+
+    private static Signal parseSignal(String[] fields, int dlc) {
+
+        int startBit = Integer.parseInt(fields[2]);
+        int length = Integer.parseInt(fields[3]);
+
+        boolean littleEndian;
+        if (fields[4].equals("intel")) {
+            littleEndian = true;
+        } else if (fields[4].equals("motorola")) {
+            littleEndian = false;
+        } else {
+            throw new IllegalArgumentException("invalid byte order " + fields[4]);
+        }
+
+        boolean signed;
+        if (fields[5].equals("signed")) {
+            signed = true;
+        } else if (fields[5].equals("unsigned")) {
+            signed = false;
+        } else {
+            throw new IllegalArgumentException("invalid signedness " + fields[5]);
+        }
+
+        Signal signal = new Signal(fields[1], startBit, length, littleEndian, signed,
+                Double.parseDouble(fields[6]), Double.parseDouble(fields[7]),
+                Double.parseDouble(fields[8]), Double.parseDouble(fields[9]),
+                fields.length > 10 ? Double.parseDouble(fields[10]) : 0);
+
+        if (signal.deadband < 0) {
+            throw new IllegalArgumentException("invalid deadband " + fields[10]);
+        }
+
+        if (length < 1 || length > 64 || startBit < 0 || startBit >= 64
+                || SignalDecoder.lastByte(signal) >= dlc || SignalDecoder.shift(signal) < 0) {
+            throw new IllegalArgumentException("signal " + signal.name + " does not fit in message");
+        }
+
+        return signal;
+    }
+
+    public List<Message> getMessages() {
+        return Collections.unmodifiableList(mMessages);
+    }
+
+    public Message getMessage(int id) {
+
+        for (Message message : mMessages) {
+            if (message.id == id) {
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    public int[] getIds() {
+
+        int[] ids = new int[mMessages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mMessages.get(i).id;
+        }
+
+        return ids;
+    }
+}
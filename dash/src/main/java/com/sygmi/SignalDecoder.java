@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.List;
+
+/* Message definition compiled into flat tables of shifts, masks and scaling.
+ * Payload is turned once into big and little endian 64 bit words, then every signal
+ * is a single shift and mask of one of them - one pass, no per signal objects
+ * or virtual calls on the hot path. Not thread safe, results are kept in the decoder. */
+public final class SignalDecoder {
+
+    private final int mDlc;
+    private final int mCount;
+
+    private final boolean[] mLittleEndian;
+    private final int[] mShift;
+    private final long[] mMask;
+    private final long[] mSignBit;  // 0 for unsigned signals
+    private final double[] mFactor;
+    private final double[] mOffset;
+    private final double[] mMin;
+    private final double[] mMax;
+
+    private final double[] mValues;
+    private final boolean[] mValid;
+
+    public SignalDecoder(SignalDatabase.Message message) {
+
+        List<SignalDatabase.Signal> signals = message.getSignals();
+
+        mDlc = message.dlc;
+        mCount = signals.size();
+
+        mLittleEndian = new boolean[mCount];
+        mShift = new int[mCount];
+        mMask = new long[mCount];
+        mSignBit = new long[mCount];
+        mFactor = new double[mCount];
+        mOffset = new double[mCount];
+        mMin = new double[mCount];
+        mMax = new double[mCount];
+        mValues = new double[mCount];
+        mValid = new boolean[mCount];
+
+        for (int i = 0; i < mCount; i++) {
+            SignalDatabase.Signal signal = signals.get(i);
+
+            mLittleEndian[i] = signal.littleEndian;
+            mShift[i] = shift(signal);
+            mMask[i] = signal.length == 64 ? -1L : (1L << signal.length) - 1;
+            mSignBit[i] = signal.signed ? 1L << (signal.length - 1) : 0;
+            mFactor[i] = signal.factor;
+            mOffset[i] = signal.offset;
+            mMin[i] = signal.min;
+            mMax[i] = signal.max;
+        }
+    }
+
+    /* Data as packed by CanDriver.CanFrame.dataToLong(): first byte is the most significant one.
+     * Returns false when length does not match the message, values are not touched then */
+    public boolean decode(long data, int len) {
+
+        if (len != mDlc) {
+            return false;
+        }
+
+        long big = len == 0 ? 0 : data << (64 - 8 * len);  // byte 0 at the top
+        long little = Long.reverseBytes(big);               // byte 0 at the bottom
+
+        for (int i = 0; i < mCount; i++) {
+            long raw = ((mLittleEndian[i] ? little : big) >>> mShift[i]) & mMask[i];
+            if ((raw & mSignBit[i]) != 0) {
+                raw |= ~mMask[i];
+            }
+
+            double value = raw * mFactor[i] + mOffset[i];
+            mValues[i] = value;
+            mValid[i] = value >= mMin[i] && value <= mMax[i];
+        }
+
+        return true;
+    }
+
+    public int getDlc() {
+        return mDlc;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public double getValue(int index) {
+        return mValues[index];
+    }
+
+    public boolean isValid(int index) {
+        return mValid[index];
+    }
+
+    // position of signal's least significant bit in its 64 bit word, see decode()
+    static int shift(SignalDatabase.Signal signal) {
+
+        if (signal.littleEndian) {
+            return signal.startBit;
+        }
+
+        int msb = 56 - 8 * (signal.startBit / 8) + signal.startBit % 8;
+        return msb - signal.length + 1;
+    }
+
+    // index of the last payload byte signal covers
+    static int lastByte(SignalDatabase.Signal signal) {
+
+        if (signal.littleEndian) {
+            return (signal.startBit + signal.length - 1) / 8;
+        }
+
+        return (63 - shift(signal)) / 8;
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.List;
+
+/* Frame filter for the ingest thread: a frame passes only when at least one of its signals
+ * moved by its deadband (see SignalDatabase) since the last frame passed.
+ * Values are compared with the last forwarded ones, not the last seen, so slow drift
+ * is still reported. Frames of ids not in the database always pass. */
+public final class SignalFilter implements ControllerService.IFrameFilter {
+
+    private final IdMap<Message> mMessages = new IdMap<Message>();
+
+    private int mSuppressed = 0;
+
+    private final static class Message {
+
+        final SignalDecoder decoder;
+        final double[] deadbands;
+        final double[] values;  // last forwarded
+        final boolean[] valid;
+        boolean forwarded = false;
+
+        Message(SignalDatabase.Message message) {
+
+            List<SignalDatabase.Signal> signals = message.getSignals();
+
+            decoder = new SignalDecoder(message);
+            deadbands = new double[signals.size()];
+            values = new double[signals.size()];
+            valid = new boolean[signals.size()];
+
+            for (int i = 0; i < deadbands.length; i++) {
+                deadbands[i] = signals.get(i).deadband;
+            }
+        }
+    }
+
+    public SignalFilter(SignalDatabase signals) {
+
+        for (SignalDatabase.Message message : signals.getMessages()) {
+            mMessages.put(message.id, new Message(message));
+        }
+    }
+
+    @Override
+    public boolean accept(int id, int len, long data) {
+
+        Message message = mMessages.get(id);
+        if (message == null) {
+            return true;
+        }
+
+        SignalDecoder decoder = message.decoder;
+        if (!decoder.decode(data, len)) {
+            return true;  // let the sniffer report it
+        }
+
+        boolean changed = !message.forwarded;
+
+        for (int i = 0; i < decoder.size() && !changed; i++) {
+            boolean valid = decoder.isValid(i);
+            if (valid != message.valid[i]) {
+                changed = true;
+            } else if (valid) {
+                double delta = Math.abs(decoder.getValue(i) - message.values[i]);
+                changed = message.deadbands[i] > 0 ? delta >= message.deadbands[i] : delta != 0;
+            }
+        }
+
+        if (!changed) {
+            mSuppressed++;
+            return false;
+        }
+
+        for (int i = 0; i < decoder.size(); i++) {
+            message.values[i] = decoder.getValue(i);
+            message.valid[i] = decoder.isValid(i);
+        }
+        message.forwarded = true;
+
+        return true;
+    }
+
+    @Override
+    public void forget(int id) {
+
+        Message message = mMessages.get(id);
+        if (message != null) {
+            message.forwarded = false;
+        }
+    }
+
+    /* Number of frames dropped because no signal moved out of its deadband */
+    public int getSuppressed() {
+        return mSuppressed;
+    }
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Current state of every signal in SignalDatabase, shared by all threads without locks.
+ * One slot per message holds the last raw payload, guarded by a sequence counter (seqlock):
+ * the single writer makes it odd before and even again after storing the payload, readers
+ * retry until they see the same even counter before and after copying it. Slots are kept
+ * in atomic arrays, so JMM orders payload accesses between the counter ones.
+ * Payloads are decoded by Reader, lazily, on the first read after an update. Readers are
+ * not thread safe, every thread gets its own with newReader(). */
+public final class SignalStore {
+
+    private final static int SPINS = 64;  // retries before yielding to the writer
+
+    private final IdMap<Integer> mSlots = new IdMap<Integer>();  // id -> slot
+    private final SignalDatabase.Message[] mMessages;
+
+    private final AtomicIntegerArray mSeq;     // odd while slot is written, 0 when never written
+    private final AtomicLongArray mData;
+    private final AtomicLongArray mTimeStamps;
+
+    // per signal, indexed by signal handle
+    private final String[] mNames;
+    private final int[] mSignalSlot;
+    private final int[] mSignalIndex;  // index of signal in its message
+
+    private volatile int mUpdates = 0;
+
+    public SignalStore(SignalDatabase signals) {
+
+        List<SignalDatabase.Message> messages = signals.getMessages();
+
+        mMessages = messages.toArray(new SignalDatabase.Message[messages.size()]);
+        mSeq = new AtomicIntegerArray(mMessages.length);
+        mData = new AtomicLongArray(mMessages.length);
+        mTimeStamps = new AtomicLongArray(mMessages.length);
+
+        int count = 0;
+        for (int slot = 0; slot < mMessages.length; slot++) {
+            mSlots.put(mMessages[slot].id, slot);
+            count += mMessages[slot].getSignals().size();
+        }
+
+        mNames = new String[count];
+        mSignalSlot = new int[count];
+        mSignalIndex = new int[count];
+
+        int signal = 0;
+        for (int slot = 0; slot < mMessages.length; slot++) {
+            List<SignalDatabase.Signal> list = mMessages[slot].getSignals();
+            for (int i = 0; i < list.size(); i++, signal++) {
+                mNames[signal] = list.get(i).name;
+                mSignalSlot[signal] = slot;
+                mSignalIndex[signal] = i;
+            }
+        }
+    }
+
+    /* Handle of signal used by Reader, -1 when database has no such signal */
+    public int indexOf(String name) {
+
+        for (int i = 0; i < mNames.length; i++) {
+            if (mNames[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int getSignalCount() {
+        return mNames.length;
+    }
+
+    /* Single writer only. Returns false when id is not in database or length does not match */
+    public boolean update(int id, int len, long data, long timeStamp) {
+
+        Integer slot = mSlots.get(id);
+        if (slot == null || len != mMessages[slot].dlc) {
+            return false;
+        }
+
+        int seq = mSeq.get(slot);
+        mSeq.set(slot, seq + 1);
+        mData.set(slot, data);
+        mTimeStamps.set(slot, timeStamp);
+        mSeq.set(slot, seq + 2);
+
+        mUpdates++;
+        return true;
+    }
+
+    public Reader newReader() {
+        return new Reader();
+    }
+
+    public String getStats() {
+        return "updates " + mUpdates;
+    }
+
+    /* Thread confined view of the store, keeps its own decoders and copies of payloads */
+    public final class Reader {
+
+        private final SignalDecoder[] mDecoders = new SignalDecoder[mMessages.length];  // null until received
+        private final int[] mDecodedSeq = new int[mMessages.length];  // store sequence decoded
+        private final long[] mTimeStamp = new long[mMessages.length];
+
+        // scratch for snapshot()
+        private final int[] mSnapshotSeq = new int[mMessages.length];
+        private final long[] mSnapshotData = new long[mMessages.length];
+        private final long[] mSnapshotTimeStamp = new long[mMessages.length];
+
+        private int mDecodes = 0;
+        private int mRetries = 0;
+
+        Reader() {
+        }
+
+        /* Current value of signal, NaN when its message was not received yet */
+        public double get(int signal) {
+
+            int slot = mSignalSlot[signal];
+            refresh(slot);
+
+            return mDecoders[slot] == null ? Double.NaN : mDecoders[slot].getValue(mSignalIndex[signal]);
+        }
+
+        /* False when signal was not received yet or is out of its <min, max> range */
+        public boolean isValid(int signal) {
+
+            int slot = mSignalSlot[signal];
+            refresh(slot);
+
+            return mDecoders[slot] != null && mDecoders[slot].isValid(mSignalIndex[signal]);
+        }
+
+        /* Time stamp of the frame signal was last decoded from, 0 when not received yet */
+        public long getTimeStamp(int signal) {
+
+            int slot = mSignalSlot[signal];
+            refresh(slot);
+
+            return mTimeStamp[slot];
+        }
+
+        /* Values of several signals taken at the same instant, ie. no message of them was
+         * updated while they were copied. Returns true when all of them are valid */
+        public boolean snapshot(int[] signals, double[] values) {
+
+            while (true) {
+                boolean consistent = true;
+
+                for (int signal : signals) {
+                    int slot = mSignalSlot[signal];
+                    mSnapshotSeq[slot] = stableSeq(slot);
+                    mSnapshotData[slot] = mData.get(slot);
+                    mSnapshotTimeStamp[slot] = mTimeStamps.get(slot);
+                }
+                for (int signal : signals) {
+                    int slot = mSignalSlot[signal];
+                    if (mSeq.get(slot) != mSnapshotSeq[slot]) {
+                        consistent = false;
+                        break;
+                    }
+                }
+
+                if (consistent) {
+                    break;
+                }
+                mRetries++;
+            }
+
+            boolean valid = true;
+
+            for (int i = 0; i < signals.length; i++) {
+                int slot = mSignalSlot[signals[i]];
+                decode(slot, mSnapshotSeq[slot], mSnapshotData[slot], mSnapshotTimeStamp[slot]);
+
+                if (mDecoders[slot] == null) {
+                    values[i] = Double.NaN;
+                    valid = false;
+                } else {
+                    values[i] = mDecoders[slot].getValue(mSignalIndex[signals[i]]);
+                    valid &= mDecoders[slot].isValid(mSignalIndex[signals[i]]);
+                }
+            }
+
+            return valid;
+        }
+
+        public String getStats() {
+            return "decodes " + mDecodes + ", retries " + mRetries;
+        }
+
+        // brings decoded values of slot up to date with the store
+        private void refresh(int slot) {
+
+            while (true) {
+                int seq = stableSeq(slot);
+                if (seq == mDecodedSeq[slot]) {
+                    return;  // nothing new, no need to copy
+                }
+
+                long data = mData.get(slot);
+                long timeStamp = mTimeStamps.get(slot);
+
+                if (mSeq.get(slot) == seq) {
+                    decode(slot, seq, data, timeStamp);
+                    return;
+                }
+                mRetries++;
+            }
+        }
+
+        private void decode(int slot, int seq, long data, long timeStamp) {
+
+            if (seq == mDecodedSeq[slot]) {
+                return;
+            }
+
+            if (mDecoders[slot] == null) {
+                mDecoders[slot] = new SignalDecoder(mMessages[slot]);
+            }
+
+            // length was checked by update()
+            mDecoders[slot].decode(data, mMessages[slot].dlc);
+            mDecodedSeq[slot] = seq;
+            mTimeStamp[slot] = timeStamp;
+            mDecodes++;
+        }
+
+        // even sequence of slot, waits for the writer to finish when it is in the middle of update
+        private int stableSeq(int slot) {
+
+            int spins = 0;
+            int seq;
+
+            while (((seq = mSeq.get(slot)) & 1) != 0) {
+                if (++spins >= SPINS) {
+                    Thread.yield();
+                    spins = 0;
+                }
+            }
+
+            return seq;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.nio.ByteBuffer;
+
+/* Incremental decoder of firmware text records eg. S1B4N20C4000000000000\r
+ * 'S' starts a record, hex id follows, 'N' separates id from hex payload and CR or LF ends it.
+ * 'C' followed by hex command number is firmware's reply to that command, eg. C03\r.
+ * Bytes are consumed in chunks of any size, records split across reads are continued
+ * on the next call. Frames are written straight into ring slots, nothing is allocated per frame.
+ * Pure java, no JNI and no android dependencies. */
+public final class SlcanDecoder {
+
+    private final static int STATE_IDLE = 0;
+    private final static int STATE_ID = 1;
+    private final static int STATE_DATA = 2;
+    private final static int STATE_SKIP = 3;  // broken record, wait for terminator
+    private final static int STATE_REPLY = 4;
+
+    public final static int NO_REPLY = -1;
+
+    private final static int MAX_STD_ID_DIGITS = 3;
+    private final static int MAX_ID_DIGITS = 8;
+    private final static int MAX_DATA_DIGITS = CanDriver.CanFrame.MAX_DATA_SIZE * 2;
+    private final static int MAX_REPLY_DIGITS = 2;
+
+    private int mState = STATE_IDLE;
+
+    private int mId = 0;
+    private int mIdDigits = 0;
+    private int mDataDigits = 0;
+    private final byte[] mData = new byte[CanDriver.CanFrame.MAX_DATA_SIZE];
+
+    private int mReply = NO_REPLY;  // last reply not taken yet
+
+    private int mErrors = 0;
+
+    /* Returns number of frames committed to the ring, listener is not signalled here
+     * so caller can do it once per chunk */
+    public int decode(byte[] buffer, int offset, int length, FrameRing ring) {
+
+        int frames = 0;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            if (step(buffer[i], ring)) {
+                frames++;
+            }
+        }
+
+        return frames;
+    }
+
+    /* The same for (direct) byte buffers, consumes all remaining bytes */
+    public int decode(ByteBuffer buffer, FrameRing ring) {
+
+        int frames = 0;
+
+        while (buffer.hasRemaining()) {
+            if (step(buffer.get(), ring)) {
+                frames++;
+            }
+        }
+
+        return frames;
+    }
+
+    private boolean step(int c, FrameRing ring) {
+
+        boolean emitted = false;
+
+        switch (mState) {
+            case STATE_IDLE:
+                if (c == 'S') {
+                    mId = 0;
+                    mIdDigits = 0;
+                    mDataDigits = 0;
+                    mState = STATE_ID;
+                } else if (c == 'C') {
+                    mId = 0;
+                    mIdDigits = 0;
+                    mState = STATE_REPLY;
+                } else if (!isTerminator(c)) {
+                    error();
+                }
+                break;
+            case STATE_ID:
+                if (c == 'N' && mIdDigits > 0) {
+                    mState = STATE_DATA;
+                } else if (isTerminator(c)) {
+                    // truncated record, next one starts right after it
+                    mErrors++;
+                    mState = STATE_IDLE;
+                } else {
+                    int nibble = hexValue(c);
+                    if (nibble < 0 || mIdDigits == MAX_ID_DIGITS) {
+                        error();
+                    } else {
+                        mId = (mId << 4) | nibble;
+                        mIdDigits++;
+                    }
+                }
+                break;
+            case STATE_DATA:
+                if (isTerminator(c)) {
+                    if ((mDataDigits & 1) != 0) {
+                        mErrors++;
+                    } else {
+                        emitted = emit(ring);
+                    }
+                    mState = STATE_IDLE;
+                } else {
+                    int nibble = hexValue(c);
+                    if (nibble < 0 || mDataDigits == MAX_DATA_DIGITS) {
+                        error();
+                    } else {
+                        int idx = mDataDigits >> 1;
+                        if ((mDataDigits & 1) == 0) {
+                            mData[idx] = (byte) (nibble << 4);
+                        } else {
+                            mData[idx] |= (byte) nibble;
+                        }
+                        mDataDigits++;
+                    }
+                }
+                break;
+            case STATE_REPLY:
+                if (isTerminator(c)) {
+                    if (mIdDigits == 0) {
+                        mErrors++;
+                    } else {
+                        mReply = mId;
+                    }
+                    mState = STATE_IDLE;
+                } else {
+                    int nibble = hexValue(c);
+                    if (nibble < 0 || mIdDigits == MAX_REPLY_DIGITS) {
+                        error();
+                    } else {
+                        mId = (mId << 4) | nibble;
+                        mIdDigits++;
+                    }
+                }
+                break;
+            case STATE_SKIP:
+                if (isTerminator(c)) {
+                    mState = STATE_IDLE;
+                }
+                break;
+        }
+
+        return emitted;
+    }
+
+    public void reset() {
+        mState = STATE_IDLE;
+    }
+
+    /* Command number of the last reply decoded, NO_REPLY when none came since previous call */
+    public int takeReply() {
+        int reply = mReply;
+        mReply = NO_REPLY;
+        return reply;
+    }
+
+    public int getErrors() {
+        return mErrors;
+    }
+
+    private boolean emit(FrameRing ring) {
+
+        CanDriver.CanFrame frame = ring.claim();
+        if (frame == null) {
+            return false;  // ring full, dropped frame is counted by ring
+        }
+
+        int len = mDataDigits >> 1;
+        byte format = mIdDigits > MAX_STD_ID_DIGITS ? CanDriver.FRAME_EXT : CanDriver.FRAME_STD;
+
+        frame.id = mId;
+        frame.info = (byte) (format | len);
+        System.arraycopy(mData, 0, frame.data, 0, len);
+        frame.timeStamp = 0;  // not provided by firmware
+
+        ring.commit();
+        return true;
+    }
+
+    private void error() {
+        mErrors++;
+        mState = STATE_SKIP;
+    }
+
+    private static boolean isTerminator(int c) {
+        return c == '\r' || c == '\n';
+    }
+
+    private static int hexValue(int c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+
+        return -1;
+    }
+}
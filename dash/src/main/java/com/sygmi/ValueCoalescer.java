@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Latest value per slot (eg. RPM, speed), written by the decode thread and published
+ * by the UI thread once per refresh tick. Values overwritten before a tick are never
+ * delivered, so UI work is bound by refresh rate, not by bus rate.
+ * Single producer, single consumer, up to 64 slots. */
+public final class ValueCoalescer {
+
+    public final static int MAX_SLOTS = 64;
+
+    private final int[] mValues;     // written by producer
+    private final int[] mPublished;  // consumer only
+    private final AtomicLong mDirty = new AtomicLong(0);
+
+    private volatile int mUpdates = 0;
+    private int mDelivered = 0;
+
+    public interface ValueSink {
+        public void onValue(int slot, int oldValue, int newValue);
+    }
+
+    public ValueCoalescer(int slots, int initialValue) {
+
+        if (slots < 1 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("Invalid number of slots " + slots);
+        }
+
+        mValues = new int[slots];
+        mPublished = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            mValues[i] = initialValue;
+            mPublished[i] = initialValue;
+        }
+    }
+
+    /* Producer side, returns true when nothing was pending, ie. publish has to be scheduled */
+    public boolean update(int slot, int value) {
+
+        mValues[slot] = value;
+        mUpdates++;
+
+        long bit = 1L << slot;
+        while (true) {
+            long dirty = mDirty.get();
+            // CAS even when bit is already set, so value written above is visible to publish()
+            if (mDirty.compareAndSet(dirty, dirty | bit)) {
+                return dirty == 0;
+            }
+        }
+    }
+
+    /* Consumer side, delivers every slot updated since previous call and returns their count */
+    public int publish(ValueSink sink) {
+
+        long dirty = mDirty.getAndSet(0);
+        int count = 0;
+
+        while (dirty != 0) {
+            int slot = Long.numberOfTrailingZeros(dirty);
+            dirty &= dirty - 1;
+
+            int value = mValues[slot];
+            int old = mPublished[slot];
+            if (value != old) {
+                mPublished[slot] = value;
+                sink.onValue(slot, old, value);
+                count++;
+            }
+        }
+
+        mDelivered += count;
+        return count;
+    }
+
+    public boolean isDirty() {
+        return mDirty.get() != 0;
+    }
+
+    /* Consumer side, last published value */
+    public int getPublished(int slot) {
+        return mPublished[slot];
+    }
+
+    public String getStats() {
+        return "updates " + mUpdates + ", delivered " + mDelivered
+                + ", coalesced " + (mUpdates - mDelivered);
+    }
+}
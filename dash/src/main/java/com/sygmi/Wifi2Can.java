@@ -11,18 +11,17 @@ package com.sygmi;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.Inet4Address;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 
 
 /* This is simple Wifi driver that fetches hex string data from device
  * Device shall be connected do AP.
+ * Several devices (eg. one per bus segment) can be given as comma separated list
+ * of host[:port], all of them are served by one NioTransport thread.
  * Only RX path is available */
 public final class Wifi2Can extends CanDriver implements ComLink.ComLinkObserver {
 
@@ -31,16 +30,14 @@ public final class Wifi2Can extends CanDriver implements ComLink.ComLinkObserver
     public final static String DEVICE_NAME = "MYBMWDASH";
 
     private final static int DEVICE_PORT = 8888;
+    private final static int CONNECT_TIMEOUT = 5000;  // ms
 
-    private ComLink mLink = null;
+    private ComLink[] mLinks = null;
 
-    private BufferedReader mInput = null;
-    private OutputStream mOutput = null;
+    private NioTransport mTransport = null;
 
     private CanDriverMonitor mMonitor = null;
 
-    private Socket mSocket;
-
     private String mIpAddress;
 
     public Wifi2Can(Context context, String ipAddress) {
@@ -80,51 +77,124 @@ public final class Wifi2Can extends CanDriver implements ComLink.ComLinkObserver
     public boolean initiate(int baudRate, int mode) {
         super.initiate(baudRate, mode);
 
-        if (validateHost(mIpAddress) == false) {
-            Log.w(TAG, "Incorrect host address found ....");
+        if (mIpAddress == null) {
+            Log.w(TAG, "No host address found ....");
             return false;
         }
 
+        String[] endpoints = mIpAddress.split(",");
+        InetSocketAddress[] addresses = new InetSocketAddress[endpoints.length];
+
+        for (int i = 0; i < endpoints.length; i++) {
+            String host = endpoints[i].trim();
+            int port = DEVICE_PORT;
+
+            int sep = host.indexOf(':');
+            if (sep > 0) {
+                try {
+                    port = Integer.parseInt(host.substring(sep + 1));
+                } catch (NumberFormatException e) {
+                    port = -1;
+                }
+                host = host.substring(0, sep);
+            }
+
+            if (validateHost(host) == false || port <= 0 || port > 0xFFFF) {
+                Log.w(TAG, "Incorrect host address found .... " + endpoints[i]);
+                return false;
+            }
+            addresses[i] = new InetSocketAddress(host, port);
+        }
+
         try {
-            mSocket = new Socket(mIpAddress, DEVICE_PORT);
-            mOutput = mSocket.getOutputStream();
-            mInput = new BufferedReader(new InputStreamReader(mSocket.getInputStream()));
+            mTransport = NioTransport.acquire();
+            mLinks = new ComLink[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                mLinks[i] = new ComLink(this, mTransport, addresses[i]);
+                mLinks[i].setOverflowPolicy(mOverflowPolicy);
+            }
         } catch (IOException e) {
             Log.w(TAG, "Problem when connecting with server " + e.toString());
             return false;
         }
 
-        mLink = new ComLink(this, mInput, mOutput);
+        for (int i = 0; i < mLinks.length; i++) {
+            if (mLinks[i] == null || !mLinks[i].awaitConnected(CONNECT_TIMEOUT)) {
+                Log.w(TAG, "Problem when connecting with server " + addresses[i]);
+                return false;
+            }
+        }
 
         mIsConnected = true;
 
-        return mLink != null;
+        return true;
+    }
+
+    @Override
+    public int getMaxAcceptFilters() {
+        return 0;  // mapping is fixed in the FW side, frames are checked in software
+    }
+
+    @Override
+    public int getMaxRejectFilters() {
+        return 0;
     }
 
     @Override
     public boolean setAcceptFilter(int idMin, int idMax) {
-        if (mLink != null) {
-            return mLink.setFiltering(idMin, idMax);
+        if (mLinks == null) {
+            return false;
         }
 
-        return false;
+        boolean status = true;
+        for (ComLink link : mLinks) {
+            status &= link.setFiltering(idMin, idMax);
+        }
+
+        return status;
     }
 
     @Override
-    public void destroy() {
+    public boolean wipe(int what) {
+        if (mLinks == null || (what & INGRESS) == 0) {
+            return false;
+        }
 
-        if (mLink != null) {
-            mLink.destroy();
+        for (ComLink link : mLinks) {
+            link.wipe();
         }
 
-        try {
-            if (mSocket != null) {
-                mSocket.close();
+        return true;
+    }
+
+    @Override
+    public boolean setFrameListener(FrameListener listener) {
+        if (mLinks == null) {
+            return false;
+        }
+
+        for (ComLink link : mLinks) {
+            link.setFrameListener(listener);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+
+        if (mLinks != null) {
+            for (ComLink link : mLinks) {
+                if (link != null) {
+                    link.destroy();
+                }
             }
-        } catch (IOException e) {
-            Log.w(TAG, "Problem when closing IP socket " + e.toString());
+            mLinks = null;
         }
 
+        NioTransport.release(mTransport);
+        mTransport = null;
+
         mIsConnected = false;
 
         super.destroy();
@@ -132,11 +202,31 @@ public final class Wifi2Can extends CanDriver implements ComLink.ComLinkObserver
 
     @Override
     public boolean receive(CanFrame frame) {
-        if (mLink != null) {
-            return mLink.receive(frame);
+        if (mLinks == null) {
+            return false;
+        }
+
+        // take whatever is ready on any endpoint, otherwise wait on the first one
+        for (ComLink link : mLinks) {
+            if (link.poll(frame)) {
+                return true;
+            }
         }
 
-        return false;
+        return mLinks[0].receive(frame);
     }
-}
 
+    @Override
+    public int receiveBatch(FrameBatch batch) {
+        batch.clear();
+        if (mLinks == null) {
+            return 0;
+        }
+
+        for (ComLink link : mLinks) {
+            link.receiveBatch(batch);
+        }
+
+        return batch.count;
+    }
+}
@@ -8,10 +8,17 @@
 
 package com.sygmi.mybmw.dash;
 
+import com.sygmi.AnimationEngine;
 import com.sygmi.BMWSniffer;
 import com.sygmi.ControllerService;
 import com.sygmi.EndpointStateService;
-import com.sygmi.FaderEffect;
+import com.sygmi.EventQueue;
+import com.sygmi.FrameQueue;
+import com.sygmi.FrameSubscription;
+import com.sygmi.SignalDatabase;
+import com.sygmi.SignalFilter;
+import com.sygmi.SignalStore;
+import com.sygmi.ValueCoalescer;
 
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
@@ -27,6 +34,7 @@ import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.telephony.TelephonyManager;
 import android.util.Log;
@@ -38,9 +46,17 @@ import android.view.WindowManager;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codeandmagic.android.gauge.DrawAllocations;
+import org.codeandmagic.android.gauge.GaugeBitmapCache;
 import org.codeandmagic.android.gauge.GaugeView;
 
-public class DashActivity extends Activity implements ControllerService.IControllerObserver {
+public class DashActivity extends Activity implements ControllerService.IControllerObserver,
+        FrameQueue.FrameSink {
 
     private static final String TAG = DashActivity.class.getSimpleName();
 
@@ -48,16 +64,59 @@ public class DashActivity extends Activity implements ControllerService.IControl
 
     private static final int SETTINGS_RESULT = 1;
 
-    private TextView mRPMText = null;
-    private TextView mSpeedText = null;
-    private TextView mEngineTempText = null;
+    // decoded values handed over from decode thread to UI thread, latest one per refresh tick,
+    // lower slots are rendered first
+    private static final int SLOT_PDC_FRONT = 0;
+    private static final int SLOT_PDC_REAR = 1;
+    private static final int SLOT_RPM = 2;
+    private static final int SLOT_SPEED = 3;
+    private static final int SLOT_ENGINE_TEMP = 4;
+    private static final int SLOT_COUNT = 5;
+
+    // urgent values do not wait for the tick, but are still published at most once per display frame
+    private static final int URGENT_PUBLISH_PERIOD = 16;  // ms
+    private static final long NO_PUBLISH = -1;
+
+    // events which can not be coalesced, delivered as they come
+    private static final int EVENT_MFL = 0;
+
+    private static final int EVENT_QUEUE_SIZE = 16;
+
+    private DigitReadoutView mRPMText = null;
+    private DigitReadoutView mSpeedText = null;
+    private DigitReadoutView mEngineTempText = null;
     private GaugeView mSpeedGauge = null;
     private FaderView mRpmFaderView = null;
+    private DashboardSurface mDashboard = null;  // used instead of widgets above when mSurfaceRenderer
 
     private View mStatusView = null;
 
     private ControllerService mControllerService = null;
-    private BMWSniffer mSniffer = null;
+    private FrameSubscription mSubscription = null;  // every frame, delivered on service decode thread
+    private volatile BMWSniffer mSniffer = null;  // used on decode thread
+
+    private final ValueCoalescer mValues = new ValueCoalescer(SLOT_COUNT, -1);
+    private volatile long mLastPublish = 0;  // uptime ms
+    // uptime ms the pending publish is due, only brought forward while pending; every change posts
+    // mPublishTask for the new time, runs posted for a time no longer due do nothing
+    private final AtomicLong mPublishDue = new AtomicLong(NO_PUBLISH);
+    private volatile long mUrgentSlots = 0;  // of high priority messages, published without waiting for tick
+
+    private final EventQueue mEvents = new EventQueue(EVENT_QUEUE_SIZE);
+    private final AtomicBoolean mRenderPending = new AtomicBoolean(false);
+    private final Handler mRenderHandler = new Handler();
+
+    private SignalDatabase mSignals = null;
+    private String mSignalDatabase = null;
+
+    // current bus values, written on decode thread, read on UI thread
+    private volatile SignalStore mStore = null;
+    private SignalStore.Reader mStoreReader = null;
+    private int[] mGaugeSignals = null;  // rpm, speed, engine temperature
+    private final double[] mGaugeValues = new double[3];
+
+    // one vsync driven animation for all gauges, see UiTasker
+    private final AnimationEngine mAnimator = new AnimationEngine();
 
     private RPMTasker mRPMTasker = new RPMTasker();
     private SpeedTasker mSpeedTasker = new SpeedTasker();
@@ -66,11 +125,14 @@ public class DashActivity extends Activity implements ControllerService.IControl
     private boolean mConnected = false;
     private int mConnectionType = -1;
     private boolean mStartDemo = false;
-    private int mRefreshRate = -1;
+    private boolean mSurfaceRenderer = false;
+    private volatile int mRefreshRate = -1;  // ms, period of UI updates
     private int mEndpointTimeout = -1;
     private String mWifiIpAddress = null;
 
-    private boolean mIsVisible = false;
+    // decode thread hands nothing over to UI thread while dashboard is not visible
+    private volatile boolean mIsVisible = false;
+    private volatile int mSuspendedUpdates = 0;  // decode thread only
 
     private BroadcastReceiver mLocalReceiver = new BroadcastReceiver() {
         @Override
@@ -114,6 +176,12 @@ public class DashActivity extends Activity implements ControllerService.IControl
 
             if (mControllerService != null) {
                 mControllerService.registerObserver(DashActivity.this);
+                // after a stall current values matter more than the backlog
+                mSubscription = new FrameSubscription(DashActivity.this, null, null,
+                        FrameSubscription.RATE_UNLIMITED, FrameSubscription.DEFAULT_QUEUE_SIZE,
+                        FrameQueue.OVERFLOW_DROP_OLDEST);
+                mSubscription.setPriorities(mSignals);
+                mControllerService.subscribe(mSubscription);
                 mControllerService.startPoll();
             }
         }
@@ -121,139 +189,113 @@ public class DashActivity extends Activity implements ControllerService.IControl
         @Override
         public void onServiceDisconnected(ComponentName className) {
             mControllerService = null;
+            mSubscription = null;
 
             Log.w(TAG, "Disconnected from Controller service !");
             mConnected = false;
         }
     };
 
-    private class UiTasker implements FaderEffect.IFaderObserver {
+    // animated gauge, steps come on UI thread once per display frame while it moves
+    private abstract class UiTasker implements AnimationEngine.IAnimationObserver {
 
-        FaderEffect mActualFader = null;
-        int lastValue = 0;
+        final AnimationEngine.Channel mChannel = mAnimator.newChannel(this, 0);
 
-        public void setFader(FaderEffect f) {
-            if (mActualFader != null) {
-                mActualFader.stop();
-                mActualFader = null;
-            }
-            // update fader
-            mActualFader = f;
+        public void animateTo(int value) {
+            mChannel.animateTo(value, DEFAULT_VISUAL_DELAY);
         }
 
-        FaderEffect getFader() {
-            return mActualFader;
+        // value shown now
+        public int getValue() {
+            return mChannel.getValue();
         }
 
-        public int getLastValue() {
-            return lastValue;
+        public boolean isRunning() {
+            return mChannel.isRunning();
         }
 
         @Override
-        public void onStep(final int val) {
-            lastValue = val;
-        }
-
-        @Override
-        public void onFinish(final int val) {
-            lastValue = val;
-            setFader(null);
+        public void onFinish(int val) {
         }
     }
 
     private class RPMTasker extends UiTasker {
 
         @Override
-        public void onStep(final int val) {
-            //Log.w(TAG, "New rpm step value " + val);
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mRPMText.setText(String.valueOf(val) + " [rpm]");
-                    mRpmFaderView.setValue(val);
-                }
-            });
-            super.onStep(val);
+        public void onStep(int val) {
+            if (mSurfaceRenderer) {
+                mDashboard.setValue(DashboardSurface.CHANNEL_RPM, val);
+                return;
+            }
+            mRPMText.setValue(val);
+            mRpmFaderView.setValue(val);
         }
     }
 
     private class SpeedTasker extends UiTasker {
 
         @Override
-        public void onStep(final int val) {
-            //Log.w(TAG, "New speed step value " + val);
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mSpeedText.setText(String.valueOf(val) + " [kmh]");
-                    mSpeedGauge.setTargetValue((float) val);
-                }
-            });
-            super.onStep(val);
+        public void onStep(int val) {
+            if (mSurfaceRenderer) {
+                mDashboard.setValue(DashboardSurface.CHANNEL_SPEED, val);
+                return;
+            }
+            mSpeedText.setValue(val);
+            mSpeedGauge.setTargetValue((float) val);
         }
     }
 
     private class EngineTempTasker extends UiTasker {
 
         @Override
-        public void onStep(final int val) {
-            //Log.w(TAG, "New engine temperature value " + val);
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mEngineTempText.setText(String.valueOf(val) + " [C]");
-                }
-            });
-            super.onStep(val);
+        public void onStep(int val) {
+            if (mSurfaceRenderer) {
+                mDashboard.setValue(DashboardSurface.CHANNEL_ENGINE_TEMP, val);
+                return;
+            }
+            mEngineTempText.setValue(val);
         }
     }
 
     private void resetVisualControls() {
-        FaderEffect f;
-
-        f = new FaderEffect(mRPMTasker, mRPMTasker.getLastValue(), 0, DEFAULT_VISUAL_DELAY);
-        mRPMTasker.setFader(f);
-        f = new FaderEffect(mSpeedTasker, mSpeedTasker.getLastValue(), 0, DEFAULT_VISUAL_DELAY);
-        mSpeedTasker.setFader(f);
-        f = new FaderEffect(mEngineTempTasker, mEngineTempTasker.getLastValue(), 0, DEFAULT_VISUAL_DELAY);
-        mEngineTempTasker.setFader(f);
+        mRPMTasker.animateTo(0);
+        mSpeedTasker.animateTo(0);
+        mEngineTempTasker.animateTo(0);
     }
 
     private void restoreVisualControls() {
-        FaderEffect f;
 
-        f = mRPMTasker.getFader();
-        if (f == null) {
-            f = new FaderEffect(mRPMTasker, mRPMTasker.getLastValue(), mRPMTasker.getLastValue(), DEFAULT_VISUAL_DELAY);
-            mRPMTasker.setFader(f);
-        } else {
-            mRPMTasker.onStep(mRPMTasker.getLastValue());
+        // gauges go to the values currently on the bus, all taken at the same instant;
+        // taskers' values are only positions of their needles
+        int rpm = mRPMTasker.getValue();
+        int speed = mSpeedTasker.getValue();
+        int engineTemp = mEngineTempTasker.getValue();
+
+        if (mStoreReader != null && mGaugeSignals != null
+                && mStoreReader.snapshot(mGaugeSignals, mGaugeValues)) {
+            rpm = (int) mGaugeValues[0];
+            speed = (int) mGaugeValues[1];
+            engineTemp = (int) mGaugeValues[2];
         }
-        f = mSpeedTasker.getFader();
-        if (f == null) {
-            f = new FaderEffect(mSpeedTasker, mSpeedTasker.getLastValue(), mSpeedTasker.getLastValue(), DEFAULT_VISUAL_DELAY);
-            mSpeedTasker.setFader(f);
-        } else {
-            mSpeedTasker.onStep(mSpeedTasker.getLastValue());
-        }
-        f = mEngineTempTasker.getFader();
-        if (f == null) {
-            f = new FaderEffect(mEngineTempTasker, mEngineTempTasker.getLastValue(), mEngineTempTasker.getLastValue(), DEFAULT_VISUAL_DELAY);
-            mEngineTempTasker.setFader(f);
-        } else {
-            mEngineTempTasker.onStep(mEngineTempTasker.getLastValue());
+
+        restoreTasker(mRPMTasker, rpm);
+        restoreTasker(mSpeedTasker, speed);
+        restoreTasker(mEngineTempTasker, engineTemp);
+    }
+
+    private void restoreTasker(UiTasker tasker, int value) {
+
+        // new widgets show the needle position at once, moving one keeps its target
+        tasker.onStep(tasker.getValue());
+        if (!tasker.isRunning()) {
+            tasker.animateTo(value);
         }
     }
 
     private void startDemo4VisualControls() {
-        FaderEffect f;
-
-        f = new FaderEffect(mRPMTasker, mRPMTasker.getLastValue(), BMWSniffer.MAX_RPM, DEFAULT_VISUAL_DELAY);
-        mRPMTasker.setFader(f);
-        f = new FaderEffect(mSpeedTasker, mSpeedTasker.getLastValue(), BMWSniffer.MAX_SPEED, DEFAULT_VISUAL_DELAY);
-        mSpeedTasker.setFader(f);
-        f = new FaderEffect(mEngineTempTasker, mEngineTempTasker.getLastValue(), BMWSniffer.MAX_ENGINE_TEMP, DEFAULT_VISUAL_DELAY);
-        mEngineTempTasker.setFader(f);
+        mRPMTasker.animateTo(BMWSniffer.MAX_RPM);
+        mSpeedTasker.animateTo(BMWSniffer.MAX_SPEED);
+        mEngineTempTasker.animateTo(BMWSniffer.MAX_ENGINE_TEMP);
 
         new Handler().postDelayed(new Runnable() {
             @Override
@@ -266,54 +308,31 @@ public class DashActivity extends Activity implements ControllerService.IControl
     @Override
     public void onConnected(String label) {
         showPopup("CAN Controller connected: " + label);
-        mSniffer = new BMWSniffer();
-        mSniffer.setSnooper(new BMWSniffer.IBMWSnooper() {
+        BMWSniffer sniffer = new BMWSniffer(mSignals);
+        sniffer.setSnooper(new BMWSniffer.IBMWSnooper() {
+
+            // decode thread, values are only queued here and rendered on UI thread
 
             @Override
             public void onEngineRPMUpdated(int oldVal, int newVal) {
-                Log.w(TAG, "Got new rpm from sniffer " + newVal);
-                // make 1000ms fading
-                if (newVal >= 0) {
-                    FaderEffect f = new FaderEffect(mRPMTasker, oldVal, newVal, DEFAULT_VISUAL_DELAY);
-                    mRPMTasker.setFader(f);  // store fader reference
-                }
+                update(SLOT_RPM, newVal);
             }
 
             public void onVehicleSpeedUpdated(int oldVal, int newVal) {
-                Log.w(TAG, "Got new speed from sniffer " + newVal);
-                // make 1000ms
-                if (newVal >= 0) {
-                    FaderEffect f = new FaderEffect(mSpeedTasker, oldVal, newVal, DEFAULT_VISUAL_DELAY);
-                    mSpeedTasker.setFader(f);  // store fader reference
-                }
+                update(SLOT_SPEED, newVal);
             }
 
             public void onParkDistanceChanged(int pdcType, byte sensor1, byte sensor2, byte sensor3, byte sensor4) {
-                Log.w(TAG, "Got new PDC values " + sensor1 + " " + sensor2 + " " + sensor3 + " " + sensor4);
-                // TODO: switch to PDC fragment
+                int sensors = ((sensor1 & 0xFF) << 24) | ((sensor2 & 0xFF) << 16) | ((sensor3 & 0xFF) << 8) | (sensor4 & 0xFF);
+                update(pdcType == BMWSniffer.PDC_TYPE_FRONT ? SLOT_PDC_FRONT : SLOT_PDC_REAR, sensors);
             }
 
             public void onEngineTemperatureUpdated(int oldVal, int newVal) {
-                Log.w(TAG, "Got new engine temperature from sniffer " + newVal);
-                // make 1000ms
-                if (newVal >= 0) {
-                    FaderEffect f = new FaderEffect(mEngineTempTasker, oldVal, newVal, DEFAULT_VISUAL_DELAY);
-                    mEngineTempTasker.setFader(f);  // store fader reference
-                }
+                update(SLOT_ENGINE_TEMP, newVal);
             }
 
             public void onSteeringWheelInputTriggered(int type) {
-                Log.w(TAG, "Got MFL input event " + type);
-                if (type == BMWSniffer.MFL_TYPE_PHONE) {
-                    TelephonyManager telManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-                    if (telManager.getCallState() == TelephonyManager.CALL_STATE_RINGING) {
-                        /* There is lot of different approaches to answer incoming a phone call
-                         * however not working with different android versions
-                         * so use auto answer option when BT headset is connected */
-
-                        // do nothing
-                    }
-                }
+                publish(EVENT_MFL, type, 0);
             }
 
             @Override
@@ -327,25 +346,219 @@ public class DashActivity extends Activity implements ControllerService.IControl
             }
 
         });
+        mEvents.clear();
+
+        SignalStore store = new SignalStore(mSignals);
+        mStoreReader = store.newReader();
+        mGaugeSignals = new int[] {
+                store.indexOf(BMWSniffer.SIGNAL_ENGINE_RPM),
+                store.indexOf(BMWSniffer.SIGNAL_VEHICLE_SPEED),
+                store.indexOf(BMWSniffer.SIGNAL_ENGINE_TEMP)};
+        for (int signal : mGaugeSignals) {
+            if (signal < 0) {
+                mGaugeSignals = null;  // database without some of gauge signals
+                break;
+            }
+        }
+        mStore = store;
+        mUrgentSlots = urgentSlots(mSignals);
+        mSniffer = sniffer;
+        if (mSubscription != null) {
+            // drop frames without meaningful changes before they reach decode thread
+            mSubscription.setFrameFilter(new SignalFilter(mSignals));
+        }
 
         mStatusView.setBackgroundColor(Color.GREEN);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
     }
 
+    // decode thread, value is shown on the next refresh tick or at once when it is urgent
+    private void update(int slot, int value) {
+        mValues.update(slot, value);
+        if (!mIsVisible) {
+            // kept coalesced, published on resume
+            mSuspendedUpdates++;
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        boolean urgent = (mUrgentSlots & (1L << slot)) != 0;
+        long due = Math.max(now, mLastPublish + (urgent ? URGENT_PUBLISH_PERIOD : mRefreshRate));
+
+        while (true) {
+            long pending = mPublishDue.get();
+            if (pending != NO_PUBLISH && (!urgent || pending <= due)) {
+                return;  // published soon enough
+            }
+            // nothing pending, or pending tick comes too late for urgent value: bring it forward
+            if (mPublishDue.compareAndSet(pending, due)) {
+                mRenderHandler.postDelayed(mPublishTask, due - now);
+                return;
+            }
+        }
+    }
+
+    // slots fed by signals of high priority messages
+    private static long urgentSlots(SignalDatabase signals) {
+
+        long slots = 0;
+
+        for (SignalDatabase.Message message : signals.getMessages()) {
+            if (message.priority != SignalDatabase.PRIORITY_HIGH) {
+                continue;
+            }
+            for (SignalDatabase.Signal signal : message.getSignals()) {
+                int slot = slotOf(signal.name);
+                if (slot >= 0) {
+                    slots |= 1L << slot;
+                }
+            }
+        }
+
+        return slots;
+    }
+
+    private static int slotOf(String signal) {
+
+        if (signal.equals(BMWSniffer.SIGNAL_ENGINE_RPM)) {
+            return SLOT_RPM;
+        } else if (signal.equals(BMWSniffer.SIGNAL_VEHICLE_SPEED)) {
+            return SLOT_SPEED;
+        } else if (signal.equals(BMWSniffer.SIGNAL_ENGINE_TEMP)) {
+            return SLOT_ENGINE_TEMP;
+        } else if (signal.startsWith(BMWSniffer.SIGNAL_PDC_FRONT)) {
+            return SLOT_PDC_FRONT;
+        } else if (signal.startsWith(BMWSniffer.SIGNAL_PDC_REAR)) {
+            return SLOT_PDC_REAR;
+        }
+
+        return -1;
+    }
+
+    private final Runnable mPublishTask = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                long due = mPublishDue.get();
+                if (due == NO_PUBLISH || due > SystemClock.uptimeMillis()) {
+                    return;  // published already or brought forward, another run comes
+                }
+                if (mPublishDue.compareAndSet(due, NO_PUBLISH)) {
+                    break;
+                }
+            }
+            if (!mIsVisible) {
+                return;
+            }
+            mLastPublish = SystemClock.uptimeMillis();
+            mValues.publish(mValueRenderer);
+        }
+    };
+
+    // decode thread
+    private void publish(int what, int arg1, int arg2) {
+        if (!mIsVisible) {
+            // steering wheel input means nothing when dashboard is not shown
+            mSuspendedUpdates++;
+            return;
+        }
+        mEvents.offer(what, arg1, arg2);
+        if (mRenderPending.compareAndSet(false, true)) {
+            mRenderHandler.post(mRenderTask);
+        }
+    }
+
+    private final Runnable mRenderTask = new Runnable() {
+        @Override
+        public void run() {
+            mRenderPending.set(false);
+            mEvents.drain(mEventRenderer);
+        }
+    };
+
+    // UI thread, final render of decoded values
+    private final ValueCoalescer.ValueSink mValueRenderer = new ValueCoalescer.ValueSink() {
+        @Override
+        public void onValue(int slot, int oldVal, int newVal) {
+
+            switch (slot) {
+                case SLOT_RPM:
+                    // needle moves from where it is now, 1000ms
+                    if (newVal >= 0) {
+                        mRPMTasker.animateTo(newVal);
+                    }
+                    break;
+                case SLOT_SPEED:
+                    if (newVal >= 0) {
+                        mSpeedTasker.animateTo(newVal);
+                    }
+                    break;
+                case SLOT_ENGINE_TEMP:
+                    if (newVal >= 0) {
+                        mEngineTempTasker.animateTo(newVal);
+                    }
+                    break;
+                case SLOT_PDC_FRONT:
+                case SLOT_PDC_REAR:
+                    Log.w(TAG, "Got new PDC values " + (byte) (newVal >> 24) + " " + (byte) (newVal >> 16)
+                            + " " + (byte) (newVal >> 8) + " " + (byte) newVal);
+                    // TODO: switch to PDC fragment
+                    break;
+            }
+        }
+    };
+
+    private final EventQueue.EventSink mEventRenderer = new EventQueue.EventSink() {
+        @Override
+        public void onEvent(int what, int arg1, int arg2) {
+
+            switch (what) {
+                case EVENT_MFL:
+                    Log.w(TAG, "Got MFL input event " + arg1);
+                    if (arg1 == BMWSniffer.MFL_TYPE_PHONE) {
+                        TelephonyManager telManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
+                        if (telManager.getCallState() == TelephonyManager.CALL_STATE_RINGING) {
+                            /* There is lot of different approaches to answer incoming a phone call
+                             * however not working with different android versions
+                             * so use auto answer option when BT headset is connected */
+
+                            // do nothing
+                        }
+                    }
+                    break;
+            }
+        }
+    };
+
     @Override
     public void onDisconnected() {
         showPopup("CAN Controller disconnected !");
         mSniffer = null;
+        mStore = null;
+        if (mStoreReader != null) {
+            Log.w(TAG, "Signal store reader: " + mStoreReader.getStats());
+            mStoreReader = null;
+        }
+        Log.w(TAG, "Render values: " + mValues.getStats() + ", events: " + mEvents.getStats());
         mStatusView.setBackgroundColor(Color.RED);
         resetVisualControls();
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
     }
 
     @Override
-    public void onDataReceived(String data) {
-        //Log.w(TAG, "CAN Controller data received !");
+    public void onFrame(int id, int len, long data, long timeStamp) {
+        // decode thread
+        BMWSniffer sniffer = mSniffer;
+        if (sniffer == null) {
+            return;
+        }
+
+        SignalStore store = mStore;
+        if (store != null) {
+            store.update(id, len, data, timeStamp);
+        }
+
         try {
-            mSniffer.sniff(data);
+            sniffer.sniff(id, data, len);
         } catch (BMWSniffer.BMWSnifferException excp) {
             Log.w(TAG, "Sniffer exception : " + excp.getReason());
         }
@@ -368,11 +581,16 @@ public class DashActivity extends Activity implements ControllerService.IControl
         if (mConnected ==  true || mIsVisible == false)
             return;
 
+        if (mSignals == null) {
+            showPopup("No signal database loaded: " + mSignalDatabase);
+            return;
+        }
+
         Intent startIntent = new Intent(DashActivity.this, ControllerService.class);
         startIntent.putExtra(ControllerService.EXTRA_TYPE, mConnectionType);
         startIntent.putExtra(ControllerService.EXTRA_BAUDRATE, ControllerService.BAUDRATE_DEFAULT);
         startIntent.putExtra(ControllerService.EXTRA_MODE, ControllerService.MODE_DEFAULT);
-        startIntent.putExtra(ControllerService.EXTRA_IDS, BMWSniffer.getIds());
+        startIntent.putExtra(ControllerService.EXTRA_IDS, mSignals.getIds());
         startIntent.putExtra(ControllerService.EXTRA_TIMEOUT, mEndpointTimeout);
         if (mConnectionType == ControllerService.DEVICE_WIFI) {
             startIntent.putExtra(ControllerService.EXTRA_AUX_DATA, mWifiIpAddress);
@@ -392,6 +610,7 @@ public class DashActivity extends Activity implements ControllerService.IControl
             return;
 
         mControllerService = null;
+        mSubscription = null;
         Intent stopIntent = new Intent(DashActivity.this, ControllerService.class);
         stopService(stopIntent);
         unbindService(mConnection);
@@ -431,13 +650,25 @@ public class DashActivity extends Activity implements ControllerService.IControl
         }
     }
 
+    // either the dashboard surface or the widgets are shown, hidden ones do not draw at all
+    private void selectRenderer() {
+        int widgets = mSurfaceRenderer ? View.GONE : View.VISIBLE;
+        mSpeedGauge.setVisibility(widgets);
+        mRpmFaderView.setVisibility(widgets);
+        mRPMText.setVisibility(widgets);
+        mSpeedText.setVisibility(widgets);
+        mEngineTempText.setVisibility(widgets);
+        mDashboard.setVisibility(mSurfaceRenderer ? View.VISIBLE : View.GONE);
+    }
+
     private void setupWidgets() {
         mSpeedGauge = (GaugeView) findViewById(R.id.gauge_view);
         mRpmFaderView = (FaderView) findViewById(R.id.faderView);
         mRpmFaderView.setMaxRange(BMWSniffer.MAX_RPM);
-        mRPMText = (TextView) findViewById(R.id.rpm_content);
-        mSpeedText = (TextView) findViewById(R.id.speed_content);
-        mEngineTempText = (TextView) findViewById(R.id.enginetemp_content);
+        mRPMText = (DigitReadoutView) findViewById(R.id.rpm_content);
+        mSpeedText = (DigitReadoutView) findViewById(R.id.speed_content);
+        mEngineTempText = (DigitReadoutView) findViewById(R.id.enginetemp_content);
+        mDashboard = (DashboardSurface) findViewById(R.id.dashboard_surface);
         mStatusView = findViewById(R.id.connection_status);
         mStatusView.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -453,12 +684,39 @@ public class DashActivity extends Activity implements ControllerService.IControl
         mConnectionType = Integer.parseInt(sharedPrefs.getString(SettingsActivity.ATTR_DEV_TYPE,
                 SettingsActivity.ATTR_DEV_TYPE_DEFAULT_VAL));
         mStartDemo = sharedPrefs.getBoolean(SettingsActivity.ATTR_START_DEMO, false);
+        mSurfaceRenderer = sharedPrefs.getBoolean(SettingsActivity.ATTR_SURFACE_RENDERER, false);
         mRefreshRate = Integer.parseInt(sharedPrefs.getString(SettingsActivity.ATTR_REFRESH_RATE,
                 SettingsActivity.ATTR_REFRESH_RATE_DEFAULT_VAL));
         mEndpointTimeout = Integer.parseInt(sharedPrefs.getString(SettingsActivity.ATTR_ENDPOINT_TIMEOUT,
                 SettingsActivity.ATTR_ENDPOINT_TIMEOUT_DEFAULT_VAL));
         mWifiIpAddress = sharedPrefs.getString(SettingsActivity.ATTR_WIFI_ENDPOINT_ADDR,
                 SettingsActivity.ATTR_WIFI_ENDPOINT_ADDR_DEFAULT_VAL);
+
+        String signalDatabase = sharedPrefs.getString(SettingsActivity.ATTR_SIGNAL_DB,
+                SettingsActivity.ATTR_SIGNAL_DB_DEFAULT_VAL);
+        if (!signalDatabase.equals(mSignalDatabase)) {
+            mSignalDatabase = signalDatabase;
+            mSignals = loadSignals(signalDatabase);
+        }
+    }
+
+    private SignalDatabase loadSignals(String asset) {
+
+        InputStream input = null;
+        try {
+            input = getAssets().open(asset);
+            return SignalDatabase.load(input);
+        } catch (IOException e) {
+            Log.w(TAG, "Can not load signal database " + asset + " : " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException e) {
+            }
+        }
     }
 
     private void showPopup(String text) {
@@ -477,8 +735,12 @@ public class DashActivity extends Activity implements ControllerService.IControl
         getActionBar().setDisplayShowHomeEnabled(false);
         getActionBar().setDisplayShowTitleEnabled(false);
 
+        // onDraw() of the gauges should not allocate, log when it does
+        DrawAllocations.setEnabled(BuildConfig.DEBUG);
+
         setupWidgets();
         getPrefs();
+        selectRenderer();
 
         mIsVisible = true;
 
@@ -503,7 +765,14 @@ public class DashActivity extends Activity implements ControllerService.IControl
     protected void onDestroy() {
         // only called when app is killed
         stopCanService();
+        mAnimator.stopAll();
         Log.d(TAG, "onDestroy");
+        if (DrawAllocations.isEnabled()) {
+            Log.d(TAG, "Draw allocations: " + DrawAllocations.getStats());
+        }
+        Log.d(TAG, "Speed needle: " + mSpeedGauge.getNeedleStats());
+        Log.d(TAG, "Dashboard surface: " + mDashboard.getStats());
+        Log.d(TAG, "Gauge bitmaps: " + GaugeBitmapCache.getStats());
         unregisterReceiver(mLocalReceiver);
         super.onDestroy();
     }
@@ -512,6 +781,13 @@ public class DashActivity extends Activity implements ControllerService.IControl
     protected void onPause() {
         Log.d(TAG, "onPause");
         mIsVisible = false;
+        // needles stay where they are, they move to current values on resume
+        mAnimator.stopAll();
+        mRenderHandler.removeCallbacks(mPublishTask);
+        mRenderHandler.removeCallbacks(mRenderTask);
+        mPublishDue.set(NO_PUBLISH);
+        mRenderPending.set(false);
+        mEvents.clear();
         super.onPause();
     }
 
@@ -519,6 +795,13 @@ public class DashActivity extends Activity implements ControllerService.IControl
     protected void onResume() {
         Log.d(TAG, "onResume");
         mIsVisible = true;
+        Log.d(TAG, "Updates suspended while hidden: " + mSuspendedUpdates + ", skipped redraws: gauge "
+                + mSpeedGauge.getSkippedUpdates() + ", fader " + mRpmFaderView.getSkippedUpdates());
+        restoreVisualControls();
+        if (mPublishDue.compareAndSet(NO_PUBLISH, SystemClock.uptimeMillis())) {
+            // values coalesced while hidden, eg. park distance
+            mRenderHandler.post(mPublishTask);
+        }
         super.onResume();
     }
 
@@ -528,11 +811,19 @@ public class DashActivity extends Activity implements ControllerService.IControl
         Log.d(TAG, "onConfigurationChanged");
         setContentView(R.layout.activity_main);
         setupWidgets();
+        selectRenderer();
         updateStatusIndicator(mConnectionType);
         restoreVisualControls();
         super.onConfigurationChanged(newConfig);
     }
 
+    @Override
+    public void onLowMemory() {
+        // gauge backgrounds are drawn again when needed
+        GaugeBitmapCache.evictAll();
+        super.onLowMemory();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         new MenuInflater(this).inflate(R.menu.options_menu, menu);
@@ -558,6 +849,8 @@ public class DashActivity extends Activity implements ControllerService.IControl
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == SETTINGS_RESULT) {
             getPrefs();
+            selectRenderer();
+            restoreVisualControls();
             updateStatusIndicator(mConnectionType);
             stopCanService();
         }
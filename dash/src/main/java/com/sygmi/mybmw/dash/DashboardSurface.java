@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi.mybmw.dash;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.sygmi.BMWSniffer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/* Whole dashboard - speed dial, rpm bar and text readouts - drawn in one pass on one surface
+ * by its own render thread, so drawing does not compete with the UI thread.
+ * Values are set from any thread with setValue(). The render thread wakes up, takes a snapshot
+ * of all of them and redraws only the elements whose value changed, locking just the rectangle
+ * they cover (eg. the temperature readout alone). The surface may ask for a larger rectangle
+ * to be redrawn, every element it touches is drawn then. */
+public class DashboardSurface extends SurfaceView implements SurfaceHolder.Callback {
+
+    private static final String TAG = DashboardSurface.class.getSimpleName();
+
+    public final static int CHANNEL_RPM = 0;
+    public final static int CHANNEL_SPEED = 1;
+    public final static int CHANNEL_ENGINE_TEMP = 2;
+    public final static int CHANNEL_COUNT = 3;
+
+    private final static int BACKGROUND = Color.BLACK;
+
+    private final AtomicIntegerArray mValues = new AtomicIntegerArray(CHANNEL_COUNT);
+
+    private Thread mRenderThread = null;  // UI thread only
+    private volatile boolean mRunning = false;
+    private volatile boolean mChanged = false;
+    private volatile int mWidth = 0;
+    private volatile int mHeight = 0;
+
+    private volatile int mFrames = 0;
+    private volatile long mPixels = 0;  // redrawn in all frames
+
+    public DashboardSurface(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+        getHolder().addCallback(this);
+    }
+
+    public DashboardSurface(final Context context, final AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public DashboardSurface(final Context context) {
+        super(context);
+        getHolder().addCallback(this);
+    }
+
+    /* Any thread */
+    public void setValue(int channel, int value) {
+        if (mValues.getAndSet(channel, value) != value) {
+            wakeUp();
+        }
+    }
+
+    public int getValue(int channel) {
+        return mValues.get(channel);
+    }
+
+    public String getStats() {
+        int frames = mFrames;
+        int area = mWidth * mHeight;
+        return "frames " + frames + ", redrawn area avg "
+                + (frames > 0 && area > 0 ? 100 * mPixels / frames / area : 0) + "%";
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRunning = true;
+        mRenderThread = new Thread(new RenderThread(holder), "DashRender");
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        wakeUp();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // surface must not be touched after return
+        mRunning = false;
+        mRenderThread.interrupt();
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+    }
+
+    private void wakeUp() {
+        mChanged = true;
+        Thread thread = mRenderThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // one part of the dashboard showing one channel
+    private static abstract class Element {
+
+        final int mChannel;
+        final Rect mBounds = new Rect();
+        int mDrawn = Integer.MIN_VALUE;  // value shown on surface
+
+        Element(int channel) {
+            mChannel = channel;
+        }
+
+        // render thread, bounds are set already
+        void layout() {
+        }
+
+        abstract void draw(Canvas canvas, int value);
+    }
+
+    private static class Bar extends Element {
+
+        private final int mMax;
+        private final Paint mPaint = new Paint();
+
+        Bar(int channel, int max) {
+            super(channel);
+            mMax = max;
+        }
+
+        @Override
+        void layout() {
+            mPaint.setShader(new LinearGradient(mBounds.left, 0, mBounds.right, 0,
+                    Color.GREEN, Color.RED, Shader.TileMode.CLAMP));
+        }
+
+        @Override
+        void draw(Canvas canvas, int value) {
+            int clamped = Math.max(0, Math.min(value, mMax));
+            canvas.drawRect(mBounds.left, mBounds.top,
+                    mBounds.left + (long) mBounds.width() * clamped / mMax, mBounds.bottom, mPaint);
+        }
+    }
+
+    private static class Dial extends Element {
+
+        private final static float START_ANGLE = 150;  // deg, clockwise from east
+        private final static float SWEEP = 240;
+        private final static int DIVISIONS = 13;
+
+        private final int mMax;
+        private final Paint mFacePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Paint mNeedlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private Bitmap mFace = null;  // scale, drawn once per size
+        private float mRadius;
+
+        Dial(int channel, int max) {
+            super(channel);
+            mMax = max;
+            mFacePaint.setColor(Color.WHITE);
+            mFacePaint.setStyle(Paint.Style.STROKE);
+            mNeedlePaint.setColor(Color.RED);
+            mNeedlePaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        }
+
+        @Override
+        void layout() {
+            if (mFace != null) {
+                mFace.recycle();
+            }
+
+            int size = Math.min(mBounds.width(), mBounds.height());
+            mRadius = size * 0.45f;
+            mFacePaint.setStrokeWidth(size * 0.01f);
+            mNeedlePaint.setStrokeWidth(size * 0.02f);
+
+            mFace = Bitmap.createBitmap(mBounds.width(), mBounds.height(), Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(mFace);
+            float cx = mBounds.width() / 2.0f;
+            float cy = mBounds.height() / 2.0f;
+            canvas.drawCircle(cx, cy, mRadius, mFacePaint);
+            for (int i = 0; i <= DIVISIONS; i++) {
+                double angle = Math.toRadians(START_ANGLE + SWEEP * i / DIVISIONS);
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                canvas.drawLine(cx + cos * mRadius * 0.85f, cy + sin * mRadius * 0.85f,
+                        cx + cos * mRadius, cy + sin * mRadius, mFacePaint);
+            }
+        }
+
+        @Override
+        void draw(Canvas canvas, int value) {
+            canvas.drawBitmap(mFace, mBounds.left, mBounds.top, null);
+
+            int clamped = Math.max(0, Math.min(value, mMax));
+            double angle = Math.toRadians(START_ANGLE + SWEEP * clamped / mMax);
+            float cx = mBounds.exactCenterX();
+            float cy = mBounds.exactCenterY();
+            canvas.drawLine(cx, cy, cx + (float) Math.cos(angle) * mRadius * 0.8f,
+                    cy + (float) Math.sin(angle) * mRadius * 0.8f, mNeedlePaint);
+            canvas.drawCircle(cx, cy, mRadius * 0.06f, mNeedlePaint);
+        }
+    }
+
+    private static class Readout extends Element {
+
+        private final char[] mSuffix;
+        private final char[] mText;
+        private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        Readout(int channel, String suffix) {
+            super(channel);
+            mSuffix = suffix.toCharArray();
+            mText = new char[11 + mSuffix.length];
+            mPaint.setColor(Color.BLUE);
+            mPaint.setFakeBoldText(true);
+        }
+
+        @Override
+        void layout() {
+            mPaint.setTextSize(mBounds.height() * 0.7f);
+        }
+
+        @Override
+        void draw(Canvas canvas, int value) {
+            // digits right before suffix, without allocating a String
+            int start = mText.length - mSuffix.length;
+            System.arraycopy(mSuffix, 0, mText, start, mSuffix.length);
+            long rest = Math.abs((long) value);
+            do {
+                mText[--start] = (char) ('0' + rest % 10);
+                rest /= 10;
+            } while (rest > 0);
+            if (value < 0) {
+                mText[--start] = '-';
+            }
+
+            canvas.drawText(mText, start, mText.length - start, mBounds.left,
+                    mBounds.bottom - mBounds.height() * 0.2f, mPaint);
+        }
+    }
+
+    private class RenderThread implements Runnable {
+
+        private final SurfaceHolder mHolder;
+
+        private final Element[] mElements = new Element[] {
+                new Dial(CHANNEL_SPEED, BMWSniffer.MAX_SPEED),
+                new Bar(CHANNEL_RPM, BMWSniffer.MAX_RPM),
+                new Readout(CHANNEL_RPM, " [rpm]"),
+                new Readout(CHANNEL_SPEED, " [kmh]"),
+                new Readout(CHANNEL_ENGINE_TEMP, " [C]"),
+        };
+
+        private final int[] mSnapshot = new int[CHANNEL_COUNT];
+        private final Rect mDirty = new Rect();
+        private int mLaidOutWidth = 0;
+        private int mLaidOutHeight = 0;
+
+        RenderThread(SurfaceHolder holder) {
+            mHolder = holder;
+        }
+
+        @Override
+        public void run() {
+
+            while (mRunning) {
+                if (!mChanged) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                mChanged = false;
+
+                int width = mWidth;
+                int height = mHeight;
+                if (width == 0 || height == 0) {
+                    continue;
+                }
+
+                boolean full = false;
+                if (width != mLaidOutWidth || height != mLaidOutHeight) {
+                    layout(width, height);
+                    full = true;
+                }
+
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    mSnapshot[i] = mValues.get(i);
+                }
+
+                mDirty.setEmpty();
+                for (Element element : mElements) {
+                    if (full || element.mDrawn != mSnapshot[element.mChannel]) {
+                        mDirty.union(element.mBounds);
+                    }
+                }
+                if (mDirty.isEmpty()) {
+                    continue;
+                }
+
+                render();
+            }
+        }
+
+        private void render() {
+
+            // surface may extend dirty rectangle to what it needs redrawn
+            Canvas canvas = mHolder.lockCanvas(mDirty);
+            if (canvas == null) {
+                return;
+            }
+
+            try {
+                canvas.drawColor(BACKGROUND);
+                for (Element element : mElements) {
+                    if (Rect.intersects(element.mBounds, mDirty)) {
+                        int value = mSnapshot[element.mChannel];
+                        element.draw(canvas, value);
+                        element.mDrawn = value;
+                    }
+                }
+            } finally {
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+
+            mPixels += mDirty.width() * mDirty.height();
+            mFrames++;
+        }
+
+        // dial on the left, bar and readouts on the right, as in activity_main layouts
+        private void layout(int width, int height) {
+
+            int dial = Math.min(height, width / 2);
+            int right = width - dial;
+            int bar = height / 6;
+            int line = Math.min((height - bar) / 3, bar);
+
+            mElements[0].mBounds.set(0, 0, dial, dial);
+            mElements[1].mBounds.set(dial, 0, width, bar);
+            for (int i = 0; i < 3; i++) {
+                mElements[2 + i].mBounds.set(dial, bar + i * line, dial + right, bar + (i + 1) * line);
+            }
+
+            for (Element element : mElements) {
+                element.layout();
+            }
+
+            mLaidOutWidth = width;
+            mLaidOutHeight = height;
+            Log.d(TAG, "Dashboard laid out for " + width + "x" + height);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi.mybmw.dash;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.codeandmagic.android.gauge.DrawAllocations;
+
+/* Integer readout with a fixed number of digits and a constant suffix after a space, eg. "5400 [rpm]".
+ * Digit glyphs and the suffix are rendered once per text size into a bitmap strip and copied
+ * from it, so setValue() allocates nothing and, as the width is fixed, only invalidates the
+ * view: no String building, text measurement nor layout pass per value like TextView.setText().
+ * Values are right aligned in the field and clamped to what fits into it. */
+public class DigitReadoutView extends View {
+
+    private final static int DEFAULT_DIGITS = 5;
+
+    private final static int GLYPH_MINUS = 10;  // 0 - 9 are digits
+    private final static int GLYPH_COUNT = 11;
+    private final static char[] GLYPHS = "0123456789-".toCharArray();
+
+    private int mDigits = DEFAULT_DIGITS;
+    private String mSuffix = "";
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private int mValue = 0;
+    private int mMaxValue;
+    private int mMinValue;
+
+    // strip of glyphs, each in a cell of mCellWidth, followed by the suffix
+    private Bitmap mGlyphs = null;
+    private int mCellWidth;
+    private int mSuffixWidth;
+    private int mTextHeight;
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    public DigitReadoutView(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.DigitReadoutView, defStyle, 0);
+        mDigits = Math.max(1, a.getInt(R.styleable.DigitReadoutView_digits, DEFAULT_DIGITS));
+        String suffix = a.getString(R.styleable.DigitReadoutView_suffix);
+        mSuffix = suffix != null ? " " + suffix : "";
+        mTextPaint.setTextSize(a.getDimension(R.styleable.DigitReadoutView_android_textSize, mTextPaint.getTextSize()));
+        mTextPaint.setColor(a.getColor(R.styleable.DigitReadoutView_android_textColor, Color.WHITE));
+        int style = a.getInt(R.styleable.DigitReadoutView_android_textStyle, Typeface.NORMAL);
+        mTextPaint.setTypeface(Typeface.defaultFromStyle(style));
+        a.recycle();
+
+        init();
+    }
+
+    public DigitReadoutView(final Context context, final AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public DigitReadoutView(final Context context) {
+        super(context);
+        init();
+    }
+
+    /* Invalidates only, never requests layout */
+    public void setValue(int value) {
+        value = Math.max(mMinValue, Math.min(value, mMaxValue));
+        if (value != mValue) {
+            mValue = value;
+            invalidate();
+        }
+    }
+
+    public int getValue() {
+        return mValue;
+    }
+
+    /* Changes size of the view, not meant to be called per value */
+    public void setTextSize(float size) {
+        mTextPaint.setTextSize(size);
+        init();
+        requestLayout();
+        invalidate();
+    }
+
+    public void setTextColor(int color) {
+        mTextPaint.setColor(color);
+        init();
+        invalidate();
+    }
+
+    private void init() {
+
+        long max = 1;
+        for (int i = 0; i < mDigits; i++) {
+            max *= 10;
+        }
+        mMaxValue = (int) Math.min(max - 1, Integer.MAX_VALUE);
+        mMinValue = (int) Math.max(-(max / 10 - 1), Integer.MIN_VALUE + 1);  // minus takes a digit
+        setValue(mValue);
+
+        renderGlyphs();
+    }
+
+    private void renderGlyphs() {
+
+        float cell = 0;
+        for (int i = 0; i < GLYPH_COUNT; i++) {
+            cell = Math.max(cell, mTextPaint.measureText(GLYPHS, i, 1));
+        }
+        Paint.FontMetrics metrics = new Paint.FontMetrics();
+        mTextPaint.getFontMetrics(metrics);
+
+        mCellWidth = (int) Math.ceil(cell);
+        mSuffixWidth = (int) Math.ceil(mTextPaint.measureText(mSuffix));
+        mTextHeight = (int) Math.ceil(metrics.descent - metrics.ascent);
+
+        if (mGlyphs != null) {
+            mGlyphs.recycle();
+            mGlyphs = null;
+        }
+        if (mCellWidth == 0 || mTextHeight == 0) {
+            return;
+        }
+
+        mGlyphs = Bitmap.createBitmap(mCellWidth * GLYPH_COUNT + Math.max(mSuffixWidth, 1), mTextHeight,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mGlyphs);
+        float baseline = -metrics.ascent;
+        for (int i = 0; i < GLYPH_COUNT; i++) {
+            // centered in the cell, so proportional fonts still line up
+            float width = mTextPaint.measureText(GLYPHS, i, 1);
+            canvas.drawText(GLYPHS, i, 1, i * mCellWidth + (mCellWidth - width) / 2, baseline, mTextPaint);
+        }
+        canvas.drawText(mSuffix, GLYPH_COUNT * mCellWidth, baseline, mTextPaint);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getPaddingLeft() + mDigits * mCellWidth + mSuffixWidth + getPaddingRight();
+        int height = getPaddingTop() + mTextHeight + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mGlyphs == null) {
+            return;
+        }
+        final int allocations = DrawAllocations.begin();
+
+        int top = getPaddingTop();
+        int x = getPaddingLeft() + mDigits * mCellWidth;
+
+        // digits from the last one, right aligned to the suffix
+        long rest = Math.abs((long) mValue);
+        do {
+            x -= mCellWidth;
+            drawGlyph(canvas, (int) (rest % 10), x, top);
+            rest /= 10;
+        } while (rest > 0);
+        if (mValue < 0) {
+            drawGlyph(canvas, GLYPH_MINUS, x - mCellWidth, top);
+        }
+
+        if (mSuffixWidth > 0) {
+            int suffix = GLYPH_COUNT * mCellWidth;
+            int left = getPaddingLeft() + mDigits * mCellWidth;
+            mSrc.set(suffix, 0, suffix + mSuffixWidth, mTextHeight);
+            mDst.set(left, top, left + mSuffixWidth, top + mTextHeight);
+            canvas.drawBitmap(mGlyphs, mSrc, mDst, null);
+        }
+
+        DrawAllocations.end(this, allocations);
+    }
+
+    private void drawGlyph(Canvas canvas, int glyph, int left, int top) {
+        mSrc.set(glyph * mCellWidth, 0, (glyph + 1) * mCellWidth, mTextHeight);
+        mDst.set(left, top, left + mCellWidth, top + mTextHeight);
+        canvas.drawBitmap(mGlyphs, mSrc, mDst, null);
+    }
+}
@@ -21,23 +21,33 @@ import android.view.View;
 import android.widget.RelativeLayout;
 import android.widget.RemoteViews;
 
+import org.codeandmagic.android.gauge.DrawAllocations;
+
 public class FaderView extends View {
 
-    private final String DIR_LEFT_TO_RIGHT = "left2Right";// default
-    private final String DIR_BOTTOM_TO_TOP = "bottom2Top";
+    // values of direction attribute
+    private final static String DIR_LEFT_TO_RIGHT = "left2Right";// default
+    private final static String DIR_BOTTOM_TO_TOP = "bottom2Top";
+
+    public final static int DIRECTION_LEFT_TO_RIGHT = 0;
+    public final static int DIRECTION_BOTTOM_TO_TOP = 1;
 
     private int mValue = 0;
     private int mLastRequestedValue = 0;
     private int mMaxValue = 0;
-    private String mDirection = DIR_LEFT_TO_RIGHT;
+    private int mDirection = DIRECTION_LEFT_TO_RIGHT;
+    private int mSkippedUpdates = 0;  // values which would not change a pixel
+
+    // black mask over the fixed gradient background, reused by every draw
+    private final Paint mMaskPaint = newMaskPaint();
 
     public FaderView(final Context context, final AttributeSet attrs, final int defStyle) {
         super(context, attrs, defStyle);
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.MyFaderView, defStyle, 0);
         String dir = a.getString(R.styleable.MyFaderView_direction);
-        if (dir != null) {
-            mDirection = new String(dir);
+        if (DIR_BOTTOM_TO_TOP.equals(dir)) {
+            mDirection = DIRECTION_BOTTOM_TO_TOP;
         }
 
         a.recycle();
@@ -55,12 +65,24 @@ public class FaderView extends View {
         if (value >= 0 && value < mMaxValue) {
             // normalize mValue
             mLastRequestedValue = value;
-            if (mDirection.equals(DIR_LEFT_TO_RIGHT)) {
-                mValue = value * getWidth() / mMaxValue;
-            } else if (mDirection.equals(DIR_BOTTOM_TO_TOP)) {
-                mValue = value * getHeight() / mMaxValue;
+            int normalized = mDirection == DIRECTION_LEFT_TO_RIGHT
+                    ? value * getWidth() / mMaxValue : value * getHeight() / mMaxValue;
+            if (normalized == mValue) {
+                mSkippedUpdates++;
+            } else if (mValue < 0) {
+                mValue = normalized;
+                invalidate();
+            } else {
+                // only the band between old and new edge of the mask changes
+                int from = Math.min(mValue, normalized);
+                int to = Math.max(mValue, normalized);
+                mValue = normalized;
+                if (mDirection == DIRECTION_LEFT_TO_RIGHT) {
+                    invalidate(from, 0, to + 1, getHeight());
+                } else {
+                    invalidate(0, getHeight() - to - 1, getWidth(), getHeight() - from);
+                }
             }
-            invalidate();
         }
     }
 
@@ -74,22 +96,42 @@ public class FaderView extends View {
         mMaxValue = value;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
+    public int getSkippedUpdates() {
+        return mSkippedUpdates;
+    }
 
-        canvas.drawColor(Color.TRANSPARENT);
+    public void setDirection(int direction) {
+        if (direction != DIRECTION_LEFT_TO_RIGHT && direction != DIRECTION_BOTTOM_TO_TOP) {
+            throw new IllegalArgumentException("Invalid direction " + direction);
+        }
+        mDirection = direction;
+        mValue = -1;  // force renormalization
+        setValue(mLastRequestedValue);
+    }
+
+    private static Paint newMaskPaint() {
         Paint p = new Paint();
         p.setAntiAlias(true);
         p.setColor(Color.BLACK);
         p.setStyle(Paint.Style.FILL);
         // opacity
         p.setAlpha(0xFF);
+        return p;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final int allocations = DrawAllocations.begin();
+
+        canvas.drawColor(Color.TRANSPARENT);
 
         // fader view has gradient_left2right fixed gradient_left2right background, so make proper(black) mask here
-        if (mDirection.equals(DIR_LEFT_TO_RIGHT)) {
-            canvas.drawRect(mValue, 0, getWidth(), getHeight(), p);
-        } else if (mDirection.equals(DIR_BOTTOM_TO_TOP)) {
-            canvas.drawRect(0, 0, getWidth(), getHeight() - mValue, p);
+        if (mDirection == DIRECTION_LEFT_TO_RIGHT) {
+            canvas.drawRect(mValue, 0, getWidth(), getHeight(), mMaskPaint);
+        } else {
+            canvas.drawRect(0, 0, getWidth(), getHeight() - mValue, mMaskPaint);
         }
+
+        DrawAllocations.end(this, allocations);
     }
 }
\ No newline at end of file
@@ -15,14 +15,17 @@ public class SettingsActivity extends PreferenceActivity{
 
     public static final String ATTR_DEV_TYPE = "prefDevType";
     public static final String ATTR_START_DEMO = "prefStartDemo";
+    public static final String ATTR_SURFACE_RENDERER = "prefSurfaceRenderer";
     public static final String ATTR_REFRESH_RATE = "prefRefreshRate";
     public static final String ATTR_ENDPOINT_TIMEOUT = "prefEndpointTimeout";
     public static final String ATTR_WIFI_ENDPOINT_ADDR = "prefWifiAddress";
+    public static final String ATTR_SIGNAL_DB = "prefSignalDb";
 
     public static final String ATTR_DEV_TYPE_DEFAULT_VAL = "255";
     public static final String ATTR_REFRESH_RATE_DEFAULT_VAL = "100";
     public static final String ATTR_ENDPOINT_TIMEOUT_DEFAULT_VAL = "1000";
     public static final String ATTR_WIFI_ENDPOINT_ADDR_DEFAULT_VAL = "127.0.0.1";
+    public static final String ATTR_SIGNAL_DB_DEFAULT_VAL = "signals/bmw_e9x.sig";
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/* Compares firmware read modes against local FirmwareEmulator: legacy 100 ms polling,
+ * pipelined polling (firmware without streaming support) and streaming.
+ * Emulator sends probe frames, latency is time from the moment frame was due in firmware
+ * until it was taken from the ring by consumer. Same pieces as ComLink in transport mode.
+ * Desktop tool, not part of the app. Run on JVM with the app and test classes on class path:
+ *   java com.sygmi.FirmwareBenchmark [frames per second] [seconds] */
+public final class FirmwareBenchmark {
+
+    private final static int PORT = 18888;
+    private final static int RING_SIZE = 128;
+    private final static int MAX_SAMPLES = 1 << 20;
+
+    // as ComLink uses them, legacy firmware was polled once per poll period
+    private final static long PROBE_TIME = TimeUnit.MILLISECONDS.toNanos(ComLink.PROBE_TIME);
+    private final static long LEGACY_PERIOD = TimeUnit.MILLISECONDS.toNanos(ComLink.POLL_PERIOD);
+    private final static long PIPELINE_PERIOD = TimeUnit.MILLISECONDS.toNanos(ComLink.PIPELINE_PERIOD);
+
+    private final long[] mLatencies = new long[MAX_SAMPLES];
+    private int mSamples = 0;
+
+    private final FrameRing mFrames = new FrameRing(RING_SIZE);
+    private final SlcanDecoder mDecoder = new SlcanDecoder();
+    private final FirmwareProtocol mProtocol;
+
+    private FirmwareBenchmark(FirmwareProtocol protocol) {
+        mProtocol = protocol;
+    }
+
+    private void run(String name, boolean firmwareStreaming, int rate, int seconds) throws IOException {
+
+        FirmwareEmulator emulator = new FirmwareEmulator(PORT, rate, firmwareStreaming, true);
+        emulator.start();
+
+        NioTransport transport = NioTransport.acquire();
+        NioTransport.Endpoint endpoint = null;
+
+        try {
+            long pollPeriod = TimeUnit.NANOSECONDS.toMillis(PIPELINE_PERIOD);
+            endpoint = transport.open(new InetSocketAddress("127.0.0.1", PORT), new Handler(), (int) pollPeriod);
+            if (!endpoint.awaitConnected(5000)) {
+                throw new IOException("Can not connect to emulator");
+            }
+
+            // consume in this thread until time is up
+            CanDriver.CanFrame frame = new CanDriver.CanFrame();
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            long warmUp = start + PROBE_TIME * 2;
+            int frames = 0;
+
+            while (System.nanoTime() - end < 0) {
+                if (!mFrames.poll(frame)) {
+                    Thread.sleep(0, 100000);
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (frame.id != FirmwareEmulator.PROBE_ID || now - warmUp < 0) {
+                    continue;
+                }
+                frames++;
+                if (mSamples < MAX_SAMPLES) {
+                    mLatencies[mSamples++] = now - frame.dataToLong();
+                }
+            }
+
+            report(name, frames, end - warmUp);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (endpoint != null) {
+                endpoint.close();
+            }
+            NioTransport.release(transport);
+            emulator.stop();
+        }
+    }
+
+    private void report(String name, int frames, long duration) {
+
+        Arrays.sort(mLatencies, 0, mSamples);
+
+        long sum = 0;
+        for (int i = 0; i < mSamples; i++) {
+            sum += mLatencies[i];
+        }
+
+        System.out.printf("%-10s %-10s %8.1f frames/s  latency avg %7.2f ms  p50 %7.2f ms  p99 %7.2f ms  dropped %d%n",
+                name, modeName(mProtocol.getMode()),
+                frames * 1e9 / duration,
+                mSamples > 0 ? sum / (double) mSamples / 1e6 : 0.0,
+                percentile(0.50) / 1e6, percentile(0.99) / 1e6,
+                mFrames.getDropped());
+    }
+
+    private double percentile(double p) {
+        return mSamples > 0 ? mLatencies[(int) ((mSamples - 1) * p)] : 0.0;
+    }
+
+    private static String modeName(int mode) {
+        switch (mode) {
+            case FirmwareProtocol.MODE_PROBING:
+                return "probing";
+            case FirmwareProtocol.MODE_STREAMING:
+                return "streaming";
+            case FirmwareProtocol.MODE_PIPELINED:
+                return "pipelined";
+            default:
+                return "idle";
+        }
+    }
+
+    private class Handler implements NioTransport.EndpointListener {
+
+        @Override
+        public void onConnected(NioTransport.Endpoint endpoint) {
+            write(endpoint, mProtocol.start(System.nanoTime()));
+        }
+
+        @Override
+        public void onData(NioTransport.Endpoint endpoint, ByteBuffer data) {
+            int frames = mDecoder.decode(data, mFrames);
+            mProtocol.onReply(mDecoder.takeReply());
+            if (frames > 0) {
+                mFrames.signal();
+            }
+        }
+
+        @Override
+        public void onTick(NioTransport.Endpoint endpoint) {
+            write(endpoint, mProtocol.poll(System.nanoTime()));
+        }
+
+        @Override
+        public void onClosed(NioTransport.Endpoint endpoint, IOException e) {
+            System.out.println("Connection error " + e);
+        }
+
+        private void write(NioTransport.Endpoint endpoint, byte[] command) {
+            if (command != null) {
+                endpoint.write(command);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : FirmwareEmulator.DEFAULT_FRAME_RATE;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        new FirmwareBenchmark(new FirmwareProtocol(false, 0, LEGACY_PERIOD))
+                .run("legacy", false, rate, seconds);
+        new FirmwareBenchmark(new FirmwareProtocol(true, PROBE_TIME, PIPELINE_PERIOD))
+                .run("fallback", false, rate, seconds);
+        new FirmwareBenchmark(new FirmwareProtocol(true, PROBE_TIME, PIPELINE_PERIOD))
+                .run("stream", true, rate, seconds);
+    }
+}
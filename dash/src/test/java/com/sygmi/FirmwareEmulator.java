@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+
+package com.sygmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/* Loopback emulator of the Wifi/Bluetooth CAN firmware, listens on 127.0.0.1:8888 by default.
+ * C02 is answered with all frames generated since the previous request,
+ * C03 is acknowledged with C03 record and frames are pushed as soon as they are generated
+ * from then on (unless streaming is disabled, then C03 is ignored like older firmware does).
+ * Frames are generated at fixed rate from the same records as FakeDevice uses,
+ * RPM and speed are changing so decoders see some traffic.
+ * With probe frames enabled every frame is PROBE_ID carrying System.nanoTime() of the moment
+ * it was due, used by FirmwareBenchmark to measure latency.
+ * Desktop tool, not part of the app. Run on JVM with the app and test classes on class path:
+ *   java com.sygmi.FirmwareEmulator [port] [frames per second] [nostream] */
+public final class FirmwareEmulator implements Runnable {
+
+    public final static int DEFAULT_PORT = 8888;
+    public final static int DEFAULT_FRAME_RATE = 500;  // frames/s
+    public final static int PROBE_ID = 0x7FF;
+
+    private final static int STREAM_PERIOD = 1;  // ms
+
+    // commands as received, without terminator
+    private final static String CMD_READ_INFO = FirmwareProtocol.FWCMD_READ_INFO.trim();
+    private final static String CMD_READ_FRAMES = FirmwareProtocol.FWCMD_READ_FRAMES.trim();
+    private final static String CMD_STREAM_FRAMES = FirmwareProtocol.FWCMD_STREAM_FRAMES.trim();
+
+    private final static byte[][] RECORDS = {
+            "S1B4N20C4000000000000\r".getBytes(),  // Speed
+            "SAAN00000000340D0000\r".getBytes(),    // RPM
+            "S1D0N8B00000000000000\r".getBytes(),   // Engine temp.
+            "S1C2N8D725B5AFFFFFFFF\r".getBytes(),   // PDC
+            "S1D6NC000\r".getBytes() };             // MFL
+
+    private final int mPort;
+    private final int mFrameRate;
+    private final boolean mStreaming;
+    private final boolean mProbeFrames;
+
+    private ServerSocket mServer = null;
+    private Thread mAcceptThread = null;
+
+    private volatile boolean mRunning = false;
+
+    public FirmwareEmulator(int port, int frameRate) {
+        this(port, frameRate, true, false);
+    }
+
+    public FirmwareEmulator(int port, int frameRate, boolean streaming, boolean probeFrames) {
+        mPort = port;
+        mFrameRate = frameRate;
+        mStreaming = streaming;
+        mProbeFrames = probeFrames;
+    }
+
+    public synchronized void start() throws IOException {
+
+        if (mRunning) {
+            return;
+        }
+
+        mServer = new ServerSocket(mPort, 4, InetAddress.getByName("127.0.0.1"));
+        mRunning = true;
+        mAcceptThread = new Thread(this, "FirmwareEmulator");
+        mAcceptThread.start();
+    }
+
+    public synchronized void stop() {
+
+        mRunning = false;
+
+        try {
+            if (mServer != null) {
+                mServer.close();
+            }
+        } catch (IOException e) {
+        }
+
+        try {
+            if (mAcceptThread != null) {
+                mAcceptThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return mServer != null ? mServer.getLocalPort() : mPort;
+    }
+
+    @Override
+    public void run() {
+
+        while (mRunning) {
+            try {
+                Socket client = mServer.accept();
+                client.setTcpNoDelay(true);
+                new Thread(new Session(client), "FirmwareEmulator-session").start();
+            } catch (IOException e) {
+                break;
+            }
+        }
+    }
+
+    private class Session implements Runnable {
+
+        private final Socket mSocket;
+        private final long mStarted = System.nanoTime();
+        private long mGenerated = 0;
+        private int mSequence = 0;
+
+        private OutputStream mOut = null;
+        private Thread mStreamThread = null;
+
+        private final byte[] mCommand = new byte[16];
+        private int mCommandLen = 0;
+
+        private final StringBuilder mReply = new StringBuilder();
+
+        Session(Socket socket) {
+            mSocket = socket;
+        }
+
+        @Override
+        public void run() {
+
+            byte[] buffer = new byte[64];
+
+            try {
+                InputStream in = mSocket.getInputStream();
+                mOut = mSocket.getOutputStream();
+
+                while (mRunning) {
+                    int count = in.read(buffer);
+                    if (count < 0) {
+                        break;
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        byte c = buffer[i];
+                        if (c == '\r' || c == '\n') {
+                            onCommand(new String(mCommand, 0, mCommandLen));
+                            mCommandLen = 0;
+                        } else if (mCommandLen < mCommand.length) {
+                            mCommand[mCommandLen++] = c;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+            } finally {
+                try {
+                    mSocket.close();
+                } catch (IOException e) {
+                }
+                if (mStreamThread != null) {
+                    mStreamThread.interrupt();
+                }
+            }
+        }
+
+        private void onCommand(String cmd) throws IOException {
+
+            if (cmd.equals(CMD_READ_INFO)) {
+                send("V0100\r".getBytes());
+            } else if (cmd.equals(CMD_READ_FRAMES)) {
+                sendFrames();
+            } else if (cmd.equals(CMD_STREAM_FRAMES) && mStreaming) {
+                send(FirmwareProtocol.FWCMD_STREAM_FRAMES.getBytes());
+                if (mStreamThread != null) {
+                    return;
+                }
+                mStreamThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (mRunning && !Thread.currentThread().isInterrupted()) {
+                                sendFrames();
+                                Thread.sleep(STREAM_PERIOD);
+                            }
+                        } catch (IOException e) {
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                }, "FirmwareEmulator-stream");
+                mStreamThread.start();
+            }
+        }
+
+        private synchronized void send(byte[] data) throws IOException {
+            mOut.write(data);
+            mOut.flush();
+        }
+
+        // all frames due since previous call
+        private synchronized void sendFrames() throws IOException {
+
+            long now = System.nanoTime();
+            long due = (now - mStarted) / 1000 * mFrameRate / 1000000;
+
+            mReply.setLength(0);
+            while (mGenerated < due) {
+                if (mProbeFrames) {
+                    appendProbe(mReply, mStarted + mGenerated * 1000000000L / mFrameRate);
+                } else {
+                    appendRecord(mReply, mSequence++);
+                }
+                mGenerated++;
+            }
+
+            if (mReply.length() > 0) {
+                send(mReply.toString().getBytes());
+            }
+        }
+    }
+
+    private static void appendProbe(StringBuilder out, long dueTime) {
+
+        out.append('S');
+        out.append(Integer.toHexString(PROBE_ID).toUpperCase());
+        out.append('N');
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            appendHexByte(out, (int) (dueTime >> shift) & 0xFF);
+        }
+        out.append('\r');
+    }
+
+    static void appendRecord(StringBuilder out, int sequence) {
+
+        int idx = sequence % RECORDS.length;
+        int round = sequence / RECORDS.length;
+
+        if (idx == 1) {
+            // RPM sweeping 0..4000, little endian raw value * 4 in bytes 4 and 5
+            int raw = ((round * 10) % 4000) * 4;
+            out.append("SAAN00000000");
+            appendHexByte(out, raw & 0xFF);
+            appendHexByte(out, (raw >> 8) & 0xFF);
+            out.append("0000\r");
+        } else if (idx == 0) {
+            // speed sweeping 0..250 km/h, see VehicleSpeed in assets/signals/bmw_e9x.sig
+            int raw = (((round / 4) % 250) * 10) & 0x3FFF;
+            out.append("S1B4N");
+            appendHexByte(out, raw & 0xFF);
+            appendHexByte(out, ((raw >> 8) & 0xFF) | 0xC0);
+            out.append("000000000000\r");
+        } else {
+            for (byte c : RECORDS[idx]) {
+                out.append((char) c);
+            }
+        }
+    }
+
+    private static void appendHexByte(StringBuilder out, int value) {
+        out.append(Character.toUpperCase(Character.forDigit((value >> 4) & 0xF, 16)));
+        out.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAME_RATE;
+        boolean streaming = !(args.length > 2 && args[2].equals("nostream"));
+
+        FirmwareEmulator emulator = new FirmwareEmulator(port, rate, streaming, false);
+        emulator.start();
+        System.out.println("Firmware emulator listening on 127.0.0.1:" + emulator.getPort() + ", "
+                + rate + " frames/s" + (streaming ? "" : ", no streaming"));
+    }
+}
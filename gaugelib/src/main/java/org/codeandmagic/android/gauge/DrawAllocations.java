@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+package org.codeandmagic.android.gauge;
+
+import android.os.Debug;
+import android.util.Log;
+
+/* Debug aid counting objects allocated by views while they draw, onDraw() should not allocate
+ * anything once the view is laid out. Views call begin() at the start of onDraw() and end()
+ * at its end, every frame which allocated is logged. Disabled by default, enable it in debug
+ * builds only: counting slows down every allocation of the process.
+ * UI thread only. */
+public final class DrawAllocations {
+
+    private static final String TAG = "DrawAllocations";
+
+    private static boolean sEnabled = false;
+
+    private static int sFrames = 0;
+    private static int sAllocatingFrames = 0;
+    private static int sAllocations = 0;
+
+    private DrawAllocations() {
+    }
+
+    public static void setEnabled(final boolean enabled) {
+        if (enabled == sEnabled) {
+            return;
+        }
+        sEnabled = enabled;
+        if (enabled) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /* Returns mark to be passed to end(), 0 when disabled */
+    public static int begin() {
+        return sEnabled ? Debug.getThreadAllocCount() : 0;
+    }
+
+    /* Returns number of objects allocated since begin() */
+    public static int end(final Object view, final int mark) {
+        if (!sEnabled) {
+            return 0;
+        }
+
+        final int count = Debug.getThreadAllocCount() - mark;
+        sFrames++;
+        if (count > 0) {
+            sAllocatingFrames++;
+            sAllocations += count;
+            Log.w(TAG, view.getClass().getSimpleName() + " allocated " + count + " objects in onDraw()");
+        }
+
+        return count;
+    }
+
+    public static String getStats() {
+        return "frames " + sFrames + ", allocating " + sAllocatingFrames + ", allocations " + sAllocations;
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+package org.codeandmagic.android.gauge;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/* Process wide cache of rendered gauge backgrounds and decoded textures, shared by all
+ * GaugeView instances, so re-created views (eg. after rotation) and gauges of the same style
+ * and size reuse pixels instead of drawing them again. Least recently used bitmaps are evicted
+ * when the cache grows over its cap. Cached bitmaps are shared, they must not be drawn into
+ * nor recycled; evicted ones are left to the garbage collector as views may still draw them. */
+public final class GaugeBitmapCache {
+
+    // at most this part of the heap is taken by the cache
+    private static final int HEAP_FRACTION = 8;
+
+    private static final String TEXTURE_KEY = "texture:";
+
+    private static final LruCache<String, Bitmap> sCache = new LruCache<String, Bitmap>(
+            (int) Math.min(Runtime.getRuntime().maxMemory() / HEAP_FRACTION, Integer.MAX_VALUE)) {
+        @Override
+        protected int sizeOf(final String key, final Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    private GaugeBitmapCache() {
+    }
+
+    /* Null when not cached */
+    public static Bitmap get(final String key) {
+        return sCache.get(key);
+    }
+
+    public static void put(final String key, final Bitmap bitmap) {
+        sCache.put(key, bitmap);
+    }
+
+    /* Drawable resource decoded once per process */
+    public static Bitmap getTexture(final Resources res, final int id) {
+        final String key = TEXTURE_KEY + id;
+        Bitmap texture = sCache.get(key);
+        if (null == texture) {
+            texture = BitmapFactory.decodeResource(res, id);
+            sCache.put(key, texture);
+        }
+        return texture;
+    }
+
+    /* Frees the memory, eg. when system runs low on it */
+    public static void evictAll() {
+        sCache.evictAll();
+    }
+
+    public static String getStats() {
+        return "size " + sCache.size() + "/" + sCache.maxSize() + " bytes, hits " + sCache.hitCount()
+                + ", misses " + sCache.missCount();
+    }
+}
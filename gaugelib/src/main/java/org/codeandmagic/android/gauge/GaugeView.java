@@ -12,7 +12,6 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -24,6 +23,7 @@ import android.graphics.Paint.Align;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.RadialGradient;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader.TileMode;
 import android.graphics.Typeface;
@@ -35,8 +35,12 @@ import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
+import java.util.Arrays;
+
 public class GaugeView extends View {
 
+    private static final String TAG = "GaugeView";
+
     public static final int SIZE = 300;
     public static final float TOP = 0.0f;
     public static final float LEFT = 0.0f;
@@ -51,6 +55,7 @@ public class GaugeView extends View {
     public static final boolean SHOW_SCALE = false;
     public static final boolean SHOW_RANGES = true;
     public static final boolean SHOW_TEXT = false;
+    public static final boolean NEEDLE_CACHE = false;
 
     public static final float OUTER_SHADOW_WIDTH = 0.03f;
     public static final float OUTER_BORDER_WIDTH = 0.04f;
@@ -82,6 +87,14 @@ public class GaugeView extends View {
     public static final float TEXT_VALUE_SIZE = 0.3f;
     public static final float TEXT_UNIT_SIZE = 0.1f;
 
+    public static final int NEEDLE_SHADOW_COLOR = Color.argb(127, 0, 0, 0);
+    public static final float NEEDLE_SCREW_RADIUS = 0.04f;
+
+    // room left around the needle in its sprite for the shadow and the screw border
+    private static final float NEEDLE_SPRITE_MARGIN = 0.02f;
+    // needle sprites are not made unless this times their size is free on the heap
+    private static final int NEEDLE_CACHE_HEADROOM = 4;
+
     // *--------------------------------------------------------------------- *//
     // Customizable properties
     // *--------------------------------------------------------------------- *//
@@ -94,6 +107,7 @@ public class GaugeView extends View {
     private boolean mShowRanges;
     private boolean mShowNeedle;
     private boolean mShowText;
+    private boolean mNeedleCache;
 
     private float mOuterShadowWidth;
     private float mOuterBorderWidth;
@@ -148,8 +162,29 @@ public class GaugeView extends View {
     private float mTextValueSize;
     private float mTextUnitSize;
 
+    // value text is formatted into the buffer only when its integer value changes
+    private final char[] mTextValueChars = new char[11];
+    private int mTextValueStart = mTextValueChars.length;
+    private int mTextValueCached = Integer.MIN_VALUE;
+
     private Path mNeedleRightPath;
     private Path mNeedleLeftPath;
+    private boolean mNeedleShadowLeft = false;  // set by getDefaultNeedleRightPaint()
+
+    // needle with the screw pre-rendered for the current size, shadow on right [0] and on left [1],
+    // null when the cache is disabled or there is no memory for it
+    private Bitmap[] mNeedleSprites;
+    private final Matrix mNeedleSpriteMatrix = new Matrix();  // sprite pixels to gauge units
+    private final Paint mNeedleSpritePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // needle is invalidated only in the rectangle it sweeps, in pixels
+    private final Rect mNeedleDirty = new Rect();
+    private float mDrawnValue = Float.NaN;  // value the needle was drawn at, NaN when not drawn
+    private int mSkippedUpdates;  // needle would move less than half a pixel
+
+    // time spent drawing the needle, to compare vector drawing with the cache
+    private int mNeedleDraws;
+    private long mNeedleDrawTime;  // ns
 
     // *--------------------------------------------------------------------- *//
 
@@ -161,9 +196,7 @@ public class GaugeView extends View {
     private float mTargetValue;
     private float mCurrentValue;
 
-    private float mNeedleVelocity;
-    private float mNeedleAcceleration;
-    private long mNeedleLastMoved = -1;
+    private final NeedlePhysics mNeedle = new NeedlePhysics();
     private boolean mNeedleInitialized;
     private boolean mSkipAnimation = true;
 
@@ -191,6 +224,7 @@ public class GaugeView extends View {
         mShowScale = a.getBoolean(R.styleable.GaugeView_showScale, SHOW_SCALE);
         mShowRanges = a.getBoolean(R.styleable.GaugeView_showRanges, SHOW_RANGES);
         mShowText = a.getBoolean(R.styleable.GaugeView_showTextE, SHOW_TEXT);
+        mNeedleCache = a.getBoolean(R.styleable.GaugeView_needleCache, NEEDLE_CACHE);
 
         mOuterShadowWidth = mShowOuterShadow ? a.getFloat(R.styleable.GaugeView_outerShadowWidth, OUTER_SHADOW_WIDTH) : 0.0f;
         mOuterBorderWidth = mShowOuterBorder ? a.getFloat(R.styleable.GaugeView_outerBorderWidth, OUTER_BORDER_WIDTH) : 0.0f;
@@ -359,7 +393,7 @@ public class GaugeView extends View {
                 mOuterRimRect.bottom, Color.rgb(255, 255, 255), Color.rgb(84, 90, 100), TileMode.REPEAT);
 
         // Use a Bitmap shader for the metallic style
-        final Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.light_alu);
+        final Bitmap bitmap = GaugeBitmapCache.getTexture(getResources(), R.drawable.light_alu);
         final BitmapShader aluminiumTile = new BitmapShader(bitmap, TileMode.REPEAT, TileMode.REPEAT);
         final Matrix matrix = new Matrix();
         matrix.setScale(1.0f / bitmap.getWidth(), 1.0f / bitmap.getHeight());
@@ -445,7 +479,8 @@ public class GaugeView extends View {
     public Paint getDefaultNeedleRightPaint() {
         final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setColor(Color.rgb(252, 18, 30));
-        paint.setShadowLayer(0.01f, 0.005f, -0.005f, Color.argb(127, 0, 0, 0));
+        paint.setShadowLayer(0.01f, 0.005f, -0.005f, NEEDLE_SHADOW_COLOR);
+        mNeedleShadowLeft = false;
         return paint;
     }
 
@@ -514,11 +549,9 @@ public class GaugeView extends View {
         super.onRestoreInstanceState(superState);
 
         mNeedleInitialized = bundle.getBoolean("needleInitialized");
-        mNeedleVelocity = bundle.getFloat("needleVelocity");
-        mNeedleAcceleration = bundle.getFloat("needleAcceleration");
-        mNeedleLastMoved = bundle.getLong("needleLastMoved");
         mCurrentValue = bundle.getFloat("currentValue");
         mTargetValue = bundle.getFloat("targetValue");
+        mNeedle.restore(mCurrentValue, bundle.getFloat("needleVelocity"), mTargetValue);
     }
 
     private void initScale() {
@@ -535,9 +568,7 @@ public class GaugeView extends View {
         final Bundle state = new Bundle();
         state.putParcelable("superState", superState);
         state.putBoolean("needleInitialized", mNeedleInitialized);
-        state.putFloat("needleVelocity", mNeedleVelocity);
-        state.putFloat("needleAcceleration", mNeedleAcceleration);
-        state.putLong("needleLastMoved", mNeedleLastMoved);
+        state.putFloat("needleVelocity", mNeedle.getVelocity());
         state.putFloat("currentValue", mCurrentValue);
         state.putFloat("targetValue", mTargetValue);
         return state;
@@ -582,14 +613,20 @@ public class GaugeView extends View {
     }
 
     private void drawGauge() {
+        final float scale = Math.min(getWidth(), getHeight());
+
+        // Background of the same style and size may have been drawn already, by this or other view;
+        // the old one is not recycled as the cache may hold it
+        final String key = getBackgroundKey();
+        mBackground = GaugeBitmapCache.get(key);
         if (null != mBackground) {
-            // Let go of the old background
-            mBackground.recycle();
+            initNeedleSprites(scale);
+            return;
         }
+
         // Create a new background according to the new width and height
         mBackground = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
         final Canvas canvas = new Canvas(mBackground);
-        final float scale = Math.min(getWidth(), getHeight());
         canvas.scale(scale, scale);
         canvas.translate((scale == getHeight()) ? ((getWidth() - scale) / 2) / scale : 0
                 , (scale == getWidth()) ? ((getHeight() - scale) / 2) / scale : 0);
@@ -600,10 +637,114 @@ public class GaugeView extends View {
         if (mShowRanges) {
             drawScale(canvas);
         }
+        GaugeBitmapCache.put(key, mBackground);
+
+        initNeedleSprites(scale);
+    }
+
+    // everything drawGauge() result depends on
+    private String getBackgroundKey() {
+        final StringBuilder key = new StringBuilder("background:");
+        key.append(getWidth()).append('x').append(getHeight())
+                .append(mShowOuterShadow ? ",shadow " + mOuterShadowWidth : "")
+                .append(mShowOuterBorder ? ",border " + mOuterBorderWidth : "")
+                .append(mShowOuterRim ? ",rim " + mOuterRimWidth : "")
+                .append(mShowInnerRim ? ",inner " + mInnerRimWidth + " " + mInnerRimBorderWidth : "");
+        if (mShowRanges) {
+            key.append(",scale ").append(mScalePosition).append(' ').append(mScaleStartValue).append(' ')
+                    .append(mScaleEndValue).append(' ').append(mScaleStartAngle).append(' ').append(mDivisions)
+                    .append(' ').append(mSubdivisions).append(' ').append(Arrays.toString(mRangeValues))
+                    .append(Arrays.toString(mRangeColors)).append(' ').append(mTextShadowColor);
+        }
+        return key.toString();
+    }
+
+    /* Renders the needle once for the given size, onDraw() then only rotates the bitmap.
+     * Needle is drawn as vectors when the cache is disabled or memory is tight */
+    private void initNeedleSprites(final float scale) {
+        recycleNeedleSprites();
+        if (!mNeedleCache || !mShowNeedle || scale <= 0) {
+            return;
+        }
+
+        // bounds of the needle pointing up, with its screw, in gauge units
+        final float half = Math.max(mNeedleWidth, NEEDLE_SCREW_RADIUS) + NEEDLE_SPRITE_MARGIN;
+        final float left = CENTER - half;
+        final float top = CENTER - mNeedleHeight - NEEDLE_SPRITE_MARGIN;
+        final float bottom = CENTER + NEEDLE_SCREW_RADIUS + NEEDLE_SPRITE_MARGIN;
+        final int width = (int) Math.ceil(2 * half * scale);
+        final int height = (int) Math.ceil((bottom - top) * scale);
+
+        final Runtime runtime = Runtime.getRuntime();
+        final long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        final long size = 2L * width * height * 4;  // ARGB_8888
+        if (size * NEEDLE_CACHE_HEADROOM > free) {
+            Log.w(TAG, "Needle cache of " + size + " bytes does not fit, drawing vectors");
+            return;
+        }
+
+        final boolean shadowLeft = mNeedleShadowLeft;
+        try {
+            final Bitmap[] sprites = new Bitmap[2];
+            for (int i = 0; i < sprites.length; i++) {
+                sprites[i] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                final Canvas canvas = new Canvas(sprites[i]);
+                canvas.scale(scale, scale);
+                canvas.translate(-left, -top);
+
+                setNeedleShadow(i == 1);
+                drawNeedleVectors(canvas);
+            }
+            mNeedleSprites = sprites;
+        } catch (final OutOfMemoryError e) {
+            Log.w(TAG, "No memory for needle cache, drawing vectors");
+        }
+        setNeedleShadow(shadowLeft);
+
+        mNeedleSpriteMatrix.setScale(1.0f / scale, 1.0f / scale);
+        mNeedleSpriteMatrix.postTranslate(left, top);
+    }
+
+    private void recycleNeedleSprites() {
+        if (null != mNeedleSprites) {
+            for (final Bitmap sprite : mNeedleSprites) {
+                if (null != sprite) {
+                    sprite.recycle();
+                }
+            }
+            mNeedleSprites = null;
+        }
+    }
+
+    public void setNeedleCache(final boolean enabled) {
+        if (enabled != mNeedleCache) {
+            mNeedleCache = enabled;
+            mNeedleDraws = 0;
+            mNeedleDrawTime = 0;
+            if (null != mBackground) {
+                initNeedleSprites(Math.min(getWidth(), getHeight()));
+            }
+            invalidate();
+        }
+    }
+
+    /* True when the needle is drawn from the pre-rendered sprites */
+    public boolean isNeedleCached() {
+        return null != mNeedleSprites;
+    }
+
+    public String getNeedleStats() {
+        return (isNeedleCached() ? "cached" : "vectors") + ", draws " + mNeedleDraws + ", avg "
+                + (mNeedleDraws > 0 ? mNeedleDrawTime / mNeedleDraws / 1000 : 0) + "us, skipped "
+                + mSkippedUpdates;
     }
 
     @Override
     protected void onDraw(final Canvas canvas) {
+        final int allocations = DrawAllocations.begin();
+
+        final boolean moving = computeCurrentValue();
+
         drawBackground(canvas);
 
         final float scale = Math.min(getWidth(), getHeight());
@@ -619,7 +760,11 @@ public class GaugeView extends View {
             drawText(canvas);
         }
 
-        computeCurrentValue();
+        if (moving) {
+            postNextFrame();
+        }
+
+        DrawAllocations.end(this, allocations);
     }
 
     private void drawBackground(final Canvas canvas) {
@@ -655,14 +800,21 @@ public class GaugeView extends View {
     }
 
     private void drawText(final Canvas canvas) {
-        final String textValue = !TextUtils.isEmpty(mTextValue) ? mTextValue : valueString(mCurrentValue);
-        final float textValueWidth = mTextValuePaint.measureText(textValue);
+        final float textValueWidth;
         final float textUnitWidth = !TextUtils.isEmpty(mTextUnit) ? mTextUnitPaint.measureText(mTextUnit) : 0;
 
         final float startX = CENTER - textUnitWidth / 2;
         final float startY = CENTER + 0.1f;
 
-        canvas.drawText(textValue, startX, startY, mTextValuePaint);
+        if (!TextUtils.isEmpty(mTextValue)) {
+            textValueWidth = mTextValuePaint.measureText(mTextValue);
+            canvas.drawText(mTextValue, startX, startY, mTextValuePaint);
+        } else {
+            formatTextValue((int) mCurrentValue);
+            final int count = mTextValueChars.length - mTextValueStart;
+            textValueWidth = mTextValuePaint.measureText(mTextValueChars, mTextValueStart, count);
+            canvas.drawText(mTextValueChars, mTextValueStart, count, startX, startY, mTextValuePaint);
+        }
 
         if (!TextUtils.isEmpty(mTextUnit)) {
             canvas.drawText(mTextUnit, CENTER + textValueWidth / 2 + 0.03f, CENTER, mTextUnitPaint);
@@ -700,8 +852,23 @@ public class GaugeView extends View {
         canvas.restore();
     }
 
-    private String valueString(final float value) {
-        return String.format("%d", (int) value);
+    // formats value into the end of mTextValueChars, without String.format() garbage every frame
+    private void formatTextValue(final int value) {
+        if (value == mTextValueCached) {
+            return;
+        }
+        mTextValueCached = value;
+
+        long rest = Math.abs((long) value);
+        int start = mTextValueChars.length;
+        do {
+            mTextValueChars[--start] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        if (value < 0) {
+            mTextValueChars[--start] = '-';
+        }
+        mTextValueStart = start;
     }
 
     private float getValueForTick(final int tick) {
@@ -719,33 +886,62 @@ public class GaugeView extends View {
 
     private void drawNeedle(final Canvas canvas) {
         if (mNeedleInitialized) {
+            final long start = System.nanoTime();
             final float angle = getAngleForValue(mCurrentValue);
+            mDrawnValue = mCurrentValue;
             // Logger.log.info(String.format("value=%f -> angle=%f", mCurrentValue, angle));
+            final boolean shadowLeft = angle > 180 && angle < 360;
 
             canvas.save(Canvas.MATRIX_SAVE_FLAG);
             canvas.rotate(angle, 0.5f, 0.5f);
 
-            setNeedleShadowPosition(angle);
-            canvas.drawPath(mNeedleLeftPath, mNeedleLeftPaint);
-            canvas.drawPath(mNeedleRightPath, mNeedleRightPaint);
+            if (null != mNeedleSprites) {
+                // the screw is round, it can be rotated with the needle
+                canvas.drawBitmap(mNeedleSprites[shadowLeft ? 1 : 0], mNeedleSpriteMatrix, mNeedleSpritePaint);
+                canvas.restore();
+            } else {
+                setNeedleShadow(shadowLeft);
+                canvas.drawPath(mNeedleLeftPath, mNeedleLeftPaint);
+                canvas.drawPath(mNeedleRightPath, mNeedleRightPaint);
+
+                canvas.restore();
 
-            canvas.restore();
+                // Draw the needle screw and its border
+                drawNeedleScrew(canvas);
+            }
 
-            // Draw the needle screw and its border
-            canvas.drawCircle(0.5f, 0.5f, 0.04f, mNeedleScrewPaint);
-            canvas.drawCircle(0.5f, 0.5f, 0.04f, mNeedleScrewBorderPaint);
+            mNeedleDrawTime += System.nanoTime() - start;
+            mNeedleDraws++;
         }
     }
 
-    private void setNeedleShadowPosition(final float angle) {
-        if (angle > 180 && angle < 360) {
+    // needle pointing up, used to render the sprites
+    private void drawNeedleVectors(final Canvas canvas) {
+        canvas.drawPath(mNeedleLeftPath, mNeedleLeftPaint);
+        canvas.drawPath(mNeedleRightPath, mNeedleRightPaint);
+        drawNeedleScrew(canvas);
+    }
+
+    private void drawNeedleScrew(final Canvas canvas) {
+        canvas.drawCircle(0.5f, 0.5f, NEEDLE_SCREW_RADIUS, mNeedleScrewPaint);
+        canvas.drawCircle(0.5f, 0.5f, NEEDLE_SCREW_RADIUS, mNeedleScrewBorderPaint);
+    }
+
+    private void setNeedleShadow(final boolean left) {
+        if (left == mNeedleShadowLeft) {
+            // shadow layers are only changed when needle crosses the vertical
+            return;
+        }
+        mNeedleShadowLeft = left;
+
+        if (left) {
             // Move shadow from right to left
             mNeedleRightPaint.setShadowLayer(0, 0, 0, Color.BLACK);
-            mNeedleLeftPaint.setShadowLayer(0.01f, -0.005f, 0.005f, Color.argb(127, 0, 0, 0));
+            mNeedleLeftPaint.setShadowLayer(0.01f, -0.005f, 0.005f, NEEDLE_SHADOW_COLOR);
         } else {
             // Move shadow from left to right
             mNeedleLeftPaint.setShadowLayer(0, 0, 0, Color.BLACK);
-            mNeedleRightPaint.setShadowLayer(0.01f, 0.005f, -0.005f, Color.argb(127, 0, 0, 0));
+            mNeedleRightPaint.setShadowLayer(0.01f, 0.005f, -0.005f, NEEDLE_SHADOW_COLOR);
         }
     }
 
@@ -753,48 +949,102 @@ public class GaugeView extends View {
         return (mScaleRotation + (value / mSubdivisionValue) * mSubdivisionAngle) % 360;
     }
 
-    private void computeCurrentValue() {
-        // Logger.log.warn(String.format("velocity=%f, acceleration=%f", mNeedleVelocity,
-        // mNeedleAcceleration));
-
+    // returns true while needle moves and needs another frame
+    private boolean computeCurrentValue() {
         if (mSkipAnimation) {
+            mNeedle.jumpTo(mTargetValue);
             mCurrentValue = mTargetValue;
-            invalidate();
-            return;
+            return false;
         }
 
-        if (!(Math.abs(mCurrentValue - mTargetValue) > 0.01f)) {
-            return;
+        mNeedle.setTarget(mTargetValue);
+        final boolean moving = mNeedle.advance(System.nanoTime());
+        mCurrentValue = mNeedle.getValue();
+
+        return moving;
+    }
+
+    // redraw on the next display frame, not from inside of onDraw(); needle still moves,
+    // so the frame is posted however little it is left to go
+    @TargetApi(16)
+    private void postNextFrame() {
+        final Rect dirty = getNeedleDirty(mTargetValue, false);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postInvalidateOnAnimation(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        } else {
+            postInvalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
         }
+    }
 
-        if (-1 != mNeedleLastMoved) {
-            final float time = (System.currentTimeMillis() - mNeedleLastMoved) / 1000.0f;
-            final float direction = Math.signum(mNeedleVelocity);
-            if (Math.abs(mNeedleVelocity) < 90.0f) {
-                mNeedleAcceleration = 5.0f * (mTargetValue - mCurrentValue);
-            } else {
-                mNeedleAcceleration = 0.0f;
-            }
+    private void invalidateNeedle(final float value) {
+        final Rect dirty = getNeedleDirty(value, true);
+        if (null != dirty) {
+            invalidate(dirty);
+        }
+    }
 
-            mNeedleAcceleration = 5.0f * (mTargetValue - mCurrentValue);
-            mCurrentValue += mNeedleVelocity * time;
-            mNeedleVelocity += mNeedleAcceleration * time;
+    /* Pixels the needle covers on its way from where it was drawn to the value, whole view when it
+     * is not known; null when skipping is allowed and the needle would move less than half a pixel */
+    private Rect getNeedleDirty(final float value, final boolean allowSkip) {
+        final float scale = Math.min(getWidth(), getHeight());
 
-            if ((mTargetValue - mCurrentValue) * direction < 0.01f * direction) {
-                mCurrentValue = mTargetValue;
-                mNeedleVelocity = 0.0f;
-                mNeedleAcceleration = 0.0f;
-                mNeedleLastMoved = -1L;
-            } else {
-                mNeedleLastMoved = System.currentTimeMillis();
-            }
+        if (mShowText || !mShowNeedle || !mShowRanges || Float.isNaN(mDrawnValue) || scale <= 0) {
+            // text in the middle changes with the value, scale is needed for angles
+            mNeedleDirty.set(0, 0, getWidth(), getHeight());
+            return mNeedleDirty;
+        }
 
-            invalidate();
+        // angles not wrapped to <0, 360) so the sweep goes the way the needle does
+        final float from = mScaleRotation + (mDrawnValue / mSubdivisionValue) * mSubdivisionAngle;
+        final float to = mScaleRotation + (value / mSubdivisionValue) * mSubdivisionAngle;
+        final float radius = mNeedleHeight * scale;
+        if (allowSkip && Math.abs(Math.toRadians(to - from)) * radius < 0.5f) {
+            mSkippedUpdates++;
+            return null;
+        }
 
-        } else {
-            mNeedleLastMoved = System.currentTimeMillis();
-            computeCurrentValue();
+        final float left = (scale == getHeight()) ? (getWidth() - scale) / 2 : 0;
+        final float top = (scale == getWidth()) ? (getHeight() - scale) / 2 : 0;
+        final float cx = left + CENTER * scale;
+        final float cy = top + CENTER * scale;
+
+        // tip extremes: both ends and every axis crossed in between
+        float minX = cx, maxX = cx, minY = cy, maxY = cy;
+        final float start = Math.min(from, to);
+        final float end = Math.max(from, to);
+        for (float angle = start; ; angle = (float) (Math.floor(angle / 90) + 1) * 90) {
+            if (angle > end) {
+                angle = end;
+            }
+            final double rad = Math.toRadians(angle);
+            final float x = cx + (float) Math.sin(rad) * radius;
+            final float y = cy - (float) Math.cos(rad) * radius;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            if (angle >= end) {
+                break;
+            }
         }
+
+        // needle width, screw and shadow around the tips and the center
+        final float margin = (Math.max(mNeedleWidth, NEEDLE_SCREW_RADIUS) + NEEDLE_SPRITE_MARGIN) * scale;
+        mNeedleDirty.set((int) Math.floor(minX - margin), (int) Math.floor(minY - margin),
+                (int) Math.ceil(maxX + margin), (int) Math.ceil(maxY + margin));
+
+        return mNeedleDirty;
+    }
+
+    /* Needle updates not redrawn because they would not move it by a pixel */
+    public int getSkippedUpdates() {
+        return mSkippedUpdates;
+    }
+
+    /* When skipped (default) needle is moved to the target value at once */
+    public void setSkipAnimation(final boolean skip) {
+        mSkipAnimation = skip;
+        invalidate();
     }
 
     public void setTargetValue(final float value) {
@@ -810,7 +1060,7 @@ public class GaugeView extends View {
             mTargetValue = value;
         }
         mNeedleInitialized = true;
-        invalidate();
+        invalidateNeedle(mTargetValue);
     }
 
 }
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+package org.codeandmagic.android.gauge;
+
+/* Needle moved toward its target by a critically damped spring: as fast as possible without
+ * overshooting. The spring is integrated in fixed time steps whatever the frame rate is, time
+ * of a frame which is not a whole number of steps is carried over to the next one, so motion
+ * does not depend on how often or how regularly advance() is called. Once needle is close
+ * enough to the target and slow enough it settles there and advance() returns false.
+ * Time is given by the caller (System.nanoTime() or Choreographer frame time), which makes
+ * the motion deterministic for any sequence of times. Not thread safe. */
+public final class NeedlePhysics {
+
+    public static final float DEFAULT_FREQUENCY = 8.0f;  // rad/s, 0 -> 100 move settles in ~1.5 s
+    public static final float DEFAULT_SETTLE_DISTANCE = 0.01f;
+
+    private static final long STEP = 1000000000L / 240;  // ns
+    private static final float STEP_SECONDS = STEP / 1e9f;
+    // longer gaps between frames (eg. view was hidden) are not simulated
+    private static final long MAX_ELAPSED = 100000000L;  // ns
+
+    private final float mFrequency;
+    private final float mSettleDistance;
+    private final float mSettleVelocity;
+
+    private float mValue = 0;
+    private float mVelocity = 0;  // per second
+    private float mTarget = 0;
+
+    private long mLastTime = -1;  // ns, -1 when settled
+    private long mPending = 0;  // ns not simulated yet
+
+    public NeedlePhysics() {
+        this(DEFAULT_FREQUENCY, DEFAULT_SETTLE_DISTANCE);
+    }
+
+    /* Frequency in rad/s, settle distance in the units of values */
+    public NeedlePhysics(final float frequency, final float settleDistance) {
+        if (frequency <= 0 || settleDistance <= 0) {
+            throw new IllegalArgumentException("Frequency and settle distance have to be positive");
+        }
+        mFrequency = frequency;
+        mSettleDistance = settleDistance;
+        mSettleVelocity = settleDistance * frequency;
+    }
+
+    /* Needle starts moving from where it is now, with the velocity it has */
+    public void setTarget(final float target) {
+        mTarget = target;
+    }
+
+    /* Places the needle at the value without motion */
+    public void jumpTo(final float value) {
+        mValue = value;
+        mTarget = value;
+        settle();
+    }
+
+    /* Restores state saved with getValue(), getVelocity() and getTarget() */
+    public void restore(final float value, final float velocity, final float target) {
+        mValue = value;
+        mVelocity = velocity;
+        mTarget = target;
+        mLastTime = -1;
+        mPending = 0;
+    }
+
+    /* Moves the needle to the given time, in ns. Returns true while it still moves,
+     * ie. another frame is needed */
+    public boolean advance(final long now) {
+        if (trySettle()) {
+            return false;
+        }
+
+        if (-1 == mLastTime) {
+            // first frame of the motion, needle starts from here
+            mLastTime = now;
+            return true;
+        }
+
+        mPending += Math.min(Math.max(now - mLastTime, 0), MAX_ELAPSED);
+        mLastTime = now;
+
+        while (mPending >= STEP) {
+            step();
+            mPending -= STEP;
+            if (trySettle()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isSettled() {
+        return mValue == mTarget && mVelocity == 0;
+    }
+
+    public float getValue() {
+        return mValue;
+    }
+
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public float getTarget() {
+        return mTarget;
+    }
+
+    // one semi-implicit Euler step of x'' = w^2 (target - x) - 2 w x'
+    private void step() {
+        final float acceleration = mFrequency * mFrequency * (mTarget - mValue) - 2 * mFrequency * mVelocity;
+        mVelocity += acceleration * STEP_SECONDS;
+        mValue += mVelocity * STEP_SECONDS;
+    }
+
+    // snaps needle to the target when close and slow enough
+    private boolean trySettle() {
+        if (Math.abs(mTarget - mValue) < mSettleDistance && Math.abs(mVelocity) < mSettleVelocity) {
+            mValue = mTarget;
+            settle();
+            return true;
+        }
+        return false;
+    }
+
+    private void settle() {
+        mVelocity = 0;
+        mLastTime = -1;
+        mPending = 0;
+    }
+}
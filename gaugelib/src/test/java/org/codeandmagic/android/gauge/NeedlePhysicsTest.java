@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Grzegorz Sygieda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *******************************************************************************/
+package org.codeandmagic.android.gauge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/* Needle motion stepped in virtual time, no frames nor clocks involved */
+public class NeedlePhysicsTest {
+
+    private static final long MS = 1000000L;  // ns
+
+    private static final float TARGET = 100;
+
+    // needle started from 0 toward TARGET at time 0
+    private static NeedlePhysics start() {
+        NeedlePhysics needle = new NeedlePhysics();
+        needle.setTarget(TARGET);
+        assertTrue(needle.advance(0));
+        return needle;
+    }
+
+    // value at time, advanced in frames of the given period
+    private static float valueAt(final long time, final long period) {
+        NeedlePhysics needle = start();
+        for (long now = period; now <= time; now += period) {
+            needle.advance(now);
+        }
+        return needle.getValue();
+    }
+
+    @Test
+    public void sameMotionAtAnyFrameRate() {
+        float value = valueAt(300 * MS, 10 * MS);
+
+        assertTrue(value > 0 && value < TARGET);
+        assertEquals(value, valueAt(300 * MS, 20 * MS), 0);
+        assertEquals(value, valueAt(300 * MS, 25 * MS), 0);
+    }
+
+    @Test
+    public void doesNotOvershoot() {
+        NeedlePhysics needle = start();
+        float previous = needle.getValue();
+
+        for (long now = MS; now <= 3000 * MS; now += MS) {
+            needle.advance(now);
+            assertTrue(needle.getValue() >= previous);
+            assertTrue(needle.getValue() <= TARGET);
+            previous = needle.getValue();
+        }
+    }
+
+    @Test
+    public void settlesOnTarget() {
+        NeedlePhysics needle = start();
+        long period = 1000 * MS / 60;
+        long now = 0;
+
+        while (needle.advance(now += period)) {
+            assertFalse(needle.isSettled());
+            assertTrue("not settled in 3 s", now < 3000 * MS);
+        }
+
+        assertTrue(now > 1000 * MS);
+        assertTrue(needle.isSettled());
+        assertEquals(TARGET, needle.getValue(), 0);
+        assertEquals(0, needle.getVelocity(), 0);
+        assertFalse(needle.advance(now + period));
+    }
+
+    @Test
+    public void longGapIsCapped() {
+        NeedlePhysics capped = start();
+        capped.advance(10000 * MS);
+
+        NeedlePhysics needle = start();
+        needle.advance(100 * MS);
+
+        assertEquals(needle.getValue(), capped.getValue(), 0);
+        assertEquals(needle.getVelocity(), capped.getVelocity(), 0);
+    }
+}